@@ -0,0 +1,440 @@
+package application;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Headless micro-benchmarks for the simulation, runnable without JavaFX. They live in their own
+ * source root so the game jar doesn't carry them; the bench profile compiles and runs them:
+ *
+ *   mvn -Pbench compile exec:java -Dexec.args="[snapshot|swarm|path|hierarchy|lookahead|planner]"
+ *
+ * Each benchmark prints the time per operation and the bytes allocated per operation
+ * (when the JVM can report per-thread allocation).
+ */
+final class Benchmarks {
+
+    private Benchmarks() {}
+
+    public static void main(String[] args) {
+        String which = args.length > 0 ? args[0] : "all";
+        if (which.equals("all") || which.equals("snapshot")) snapshot();
+        if (which.equals("all") || which.equals("swarm")) swarm();
+        if (which.equals("all") || which.equals("path")) path();
+        if (which.equals("all") || which.equals("hierarchy")) hierarchy();
+        if (which.equals("all") || which.equals("lookahead")) lookahead();
+        if (which.equals("all") || which.equals("planner")) planner();
+    }
+
+    // Snapshot/restore of a mid-game two-player world, as used by rollback and lookahead
+    static void snapshot() {
+        for (GameController.Difficulty diff : new GameController.Difficulty[]{GameController.Difficulty.EASY, GameController.Difficulty.HARD}) {
+            GameWorld world = new GameWorld();
+            world.setDifficulty(diff);
+            world.setSeed(1);
+            world.setup(diff, true, true);
+            for (int t = 0; t < 600; t++) world.step((byte) ((t / 40) % 4), (byte) ((t / 25) % 4));
+
+            ByteBuffer buf = ByteBuffer.allocateDirect(world.snapshotSize());
+            ByteBuffer check = ByteBuffer.allocateDirect(world.snapshotSize());
+            world.snapshotInto(buf);
+            buf.flip();
+
+            int iterations = 200_000;
+            for (int i = 0; i < iterations; i++) { // warm-up
+                buf.clear();
+                world.snapshotInto(buf);
+                buf.flip();
+                world.restoreFrom(buf);
+            }
+
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                buf.clear();
+                world.snapshotInto(buf);
+            }
+            long snapNs = System.nanoTime() - start;
+            long snapBytes = allocatedSince(bytes);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                buf.flip();
+                world.restoreFrom(buf);
+            }
+            long restoreNs = System.nanoTime() - start;
+            long restoreBytes = allocatedSince(bytes);
+
+            // Round trip must reproduce the same bytes
+            world.snapshotInto(check);
+            buf.flip();
+            check.flip();
+            if (!buf.equals(check)) throw new IllegalStateException("snapshot round trip differs");
+
+            System.out.printf("snapshot %-6s %5d bytes  snapshotInto %.2f us (%d B/op)  restoreFrom %.2f us (%d B/op)%n",
+                    diff, world.snapshotSize(),
+                    snapNs / 1000.0 / iterations, snapBytes / iterations,
+                    restoreNs / 1000.0 / iterations, restoreBytes / iterations);
+        }
+    }
+
+    // Full simulation ticks with growing swarm sizes on the hard map
+    static void swarm() {
+        GameController.Difficulty diff = GameController.Difficulty.HARD;
+        for (int swarmSize : new int[]{0, 64, 256, 1024, 4096}) {
+            // Large swarms run both ways to show what the ForkJoin split buys on this machine
+            boolean both = swarmSize >= GhostStore.PARALLEL_THRESHOLD;
+            for (int pass = both ? 0 : 1; pass < 2; pass++) {
+                GameWorld world = new GameWorld();
+                world.setDifficulty(diff);
+                world.setSeed(1);
+                world.swarmSize = swarmSize;
+                world.setup(diff, true, false);
+                world.swarm.parallelThreshold = pass == 0 ? Integer.MAX_VALUE : GhostStore.PARALLEL_THRESHOLD;
+                int ticks = swarmSize >= 4096 ? 4_000 : 20_000;
+                for (int t = 0; t < ticks; t++) tick(world, t); // warm-up
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                for (int t = 0; t < ticks; t++) tick(world, t);
+                long ns = System.nanoTime() - start;
+                long allocated = allocatedSince(bytes);
+                String mode = !both ? "" : pass == 0 ? " serial" : " pooled (" + java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() + " workers)";
+                System.out.printf("swarm %5d ghosts%s  %.2f us/tick  %d B/tick%n", swarmSize, mode, ns / 1000.0 / ticks, allocated / ticks);
+            }
+        }
+    }
+
+    // Point-to-point searches between random open tiles: the old per-call A* against Pathfinder,
+    // then Pathfinder against Dijkstra on the junction graph
+    static void path() {
+        path("HARD", GameWorld.mapFor(GameController.Difficulty.HARD), 20_000, true);
+        path("maze256", MazeGenerator.generate(256, 256, 0.1, 1), 200, false);
+        junctions("HARD", GameWorld.mapFor(GameController.Difficulty.HARD), 20_000);
+        junctions("maze256", MazeGenerator.generate(256, 256, 0.1, 1), 200);
+    }
+
+    // The same searches between junctions, on the junction graph and on the tile grid
+    private static void junctions(String name, TileMap map, int queries) {
+        JunctionGraph graph = new JunctionGraph(map);
+        MatchRandom random = new MatchRandom(11);
+        int[] pairs = new int[queries * 2];
+        for (int i = 0; i < pairs.length; i++) pairs[i] = random.nextInt(graph.nodeCount());
+        Pathfinder pathfinder = new Pathfinder();
+        int[] out = new int[map.width * map.height];
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            long start = System.nanoTime();
+            long tiles = 0;
+            for (int q = 0; q < queries; q++) {
+                int a = graph.nodeTile(pairs[2 * q]), b = graph.nodeTile(pairs[2 * q + 1]);
+                tiles += pathfinder.findPath(map, a % map.width, a / map.width, b % map.width, b / map.width, false, out) - 1;
+            }
+            long gridNs = System.nanoTime() - start;
+
+            long bytes = allocatedBytes();
+            start = System.nanoTime();
+            long steps = 0;
+            for (int q = 0; q < queries; q++) {
+                steps += graph.distance(pairs[2 * q], pairs[2 * q + 1]);
+            }
+            long graphNs = System.nanoTime() - start;
+            long allocated = allocatedSince(bytes);
+            if (steps != tiles) throw new IllegalStateException("junction graph distances differ");
+            if (round == 1) {
+                System.out.printf("junctions %-8s %d tiles -> %d nodes, %d edges  grid A* %.2f us  graph %.2f us (%d B/op)%n",
+                        name, map.width * map.height, graph.nodeCount(), graph.edgeCount(),
+                        gridNs / 1000.0 / queries, graphNs / 1000.0 / queries, allocated / queries);
+            }
+        }
+    }
+
+    // INSANE with the Monte Carlo ghosts: raw restore + step throughput of one rollout thread, then
+    // whole matches at several planning budgets, against the same matches without lookahead
+    static void lookahead() {
+        GameController.Difficulty diff = GameController.Difficulty.INSANE;
+        GameWorld world = new GameWorld();
+        world.setDifficulty(diff);
+        world.setSeed(1);
+        world.setup(diff, false, false);
+        for (int t = 0; t < 600; t++) world.step((byte) ((t / 40) % 4), Direction.NONE);
+        ByteBuffer buf = ByteBuffer.allocate(world.snapshotSize());
+        world.snapshotInto(buf);
+        GameWorld sandbox = new GameWorld();
+        sandbox.setDifficulty(diff);
+        sandbox.setup(diff, false, false);
+        int restores = 20_000;
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < restores; i++) {
+                buf.flip();
+                sandbox.restoreFrom(buf);
+                for (int t = 0; t < GhostLookahead.DEPTH; t++) sandbox.step((byte) ((t / 20 + i) % 4), Direction.NONE);
+            }
+            long ns = System.nanoTime() - start;
+            long allocated = allocatedSince(bytes);
+            if (round == 1) {
+                System.out.printf("lookahead rollout (restore + %d steps) %.1f us  %.0f ticks/s per thread  %d B/rollout%n",
+                        GhostLookahead.DEPTH, ns / 1000.0 / restores, restores * (double) GhostLookahead.DEPTH * 1e9 / ns, allocated / restores);
+            }
+        }
+
+        // The first two passes only warm up: until the rollout code is fully compiled, budgets are
+        // spent in the interpreter and lost to the compiler threads
+        for (int pass = 0; pass < 3; pass++) {
+            for (int budgetUs : new int[]{0, 1000, 2000, 4000, 8000}) {
+                long caughtTicks = 0;
+                int matches = 8;
+                GhostLookahead brain = budgetUs > 0 ? new GhostLookahead(budgetUs * 1000L) : null;
+                long start = 0;
+                int ticks = 0;
+                for (int m = -1; m < matches; m++) { // match -1 is warm-up (and builds the sandboxes)
+                    if (m == 0) {
+                        if (brain != null) {
+                            brain.plans = brain.decisions = brain.fallbacks = brain.rollouts = brain.simulatedTicks = brain.planNanos = 0;
+                            brain.overruns = brain.maxPlanNanos = 0;
+                        }
+                        caughtTicks = 0;
+                        ticks = 0;
+                        start = System.nanoTime();
+                    }
+                    GameWorld match = new GameWorld();
+                    match.setDifficulty(diff);
+                    match.setSeed(100 + m);
+                    match.setup(diff, false, false);
+                    match.lookahead = brain;
+                    MatchRandom player = new MatchRandom(m);
+                    byte input = Direction.LEFT;
+                    int t = 0;
+                    for (; t < 3600; t++) {
+                        if (match.pacman.arrivesThisTick() && player.nextInt(4) == 0) input = (byte) player.nextInt(4);
+                        if ((match.step(input, Direction.NONE) & (GameWorld.EVENT_ALL_DOWN | GameWorld.EVENT_ALL_COLLECTED)) != 0) break;
+                    }
+                    caughtTicks += t;
+                    ticks += t;
+                }
+                long ns = System.nanoTime() - start;
+                if (pass < 2) continue;
+                if (brain == null) {
+                    System.out.printf("lookahead off       %.2f us/tick  random player survives %.0f ticks on average%n",
+                            ns / 1000.0 / ticks, (double) caughtTicks / matches);
+                } else {
+                    System.out.printf("lookahead %4d us   %.2f us/tick  plan %.0f us (max %.0f, %.1f%% over budget)  %.0f rollouts/decision  %.1f%% fallbacks  %.2fM ticks/s  random player survives %.0f ticks on average%n",
+                            budgetUs, ns / 1000.0 / ticks, brain.planNanos / 1000.0 / Math.max(1, brain.plans),
+                            brain.maxPlanNanos / 1000.0, 100.0 * brain.overruns / Math.max(1, brain.plans),
+                            (double) brain.rollouts / Math.max(1, brain.decisions), 100.0 * brain.fallbacks / Math.max(1, brain.decisions),
+                            brain.simulatedTicks * 1e3 / Math.max(1, brain.planNanos), (double) caughtTicks / matches);
+                }
+            }
+        }
+    }
+
+    // Generated mazes of growing size: building the hierarchy, redoing it around a gate that closes
+    // and opens again, and point-to-point queries against the flat A*
+    static void hierarchy() {
+        for (int size : new int[]{128, 256, 512, 1024}) {
+            TileMap map = MazeGenerator.generate(size, size, 0.1, size);
+            int queries = size >= 1024 ? 50 : 200;
+            MatchRandom random = new MatchRandom(5);
+            int[] pairs = new int[queries * 2];
+            for (int i = 0; i < pairs.length; i++) {
+                int tile;
+                do {
+                    tile = random.nextInt(map.width * map.height);
+                } while (map.isWall(tile % map.width, tile / map.width));
+                pairs[i] = tile;
+            }
+            int[] out = new int[map.width * map.height];
+            Pathfinder pathfinder = new Pathfinder();
+            HierarchicalPathfinder paths = null;
+            for (int round = 0; round < 2; round++) { // first round is warm-up
+                long start = System.nanoTime();
+                paths = new HierarchicalPathfinder(map);
+                long buildNs = System.nanoTime() - start;
+
+                // Close and reopen the corridor tile next to each query start
+                start = System.nanoTime();
+                int toggles = 0;
+                for (int q = 0; q < queries; q++) {
+                    int x = pairs[2 * q] % map.width + 1, y = pairs[2 * q] / map.width;
+                    if (map.isWall(x, y)) continue;
+                    int val = map.get(x, y);
+                    map.set(x, y, TileMap.GATE);
+                    paths.update(x, y);
+                    map.set(x, y, val);
+                    paths.update(x, y);
+                    toggles += 2;
+                }
+                long updateNs = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long flatTiles = 0;
+                for (int q = 0; q < queries; q++) {
+                    int a = pairs[2 * q], b = pairs[2 * q + 1];
+                    flatTiles += pathfinder.findPath(map, a % map.width, a / map.width, b % map.width, b / map.width, false, out);
+                }
+                long flatNs = System.nanoTime() - start;
+
+                long bytes = allocatedBytes();
+                start = System.nanoTime();
+                long tiles = 0;
+                for (int q = 0; q < queries; q++) {
+                    int a = pairs[2 * q], b = pairs[2 * q + 1];
+                    tiles += paths.findPath(a % map.width, a / map.width, b % map.width, b / map.width, out);
+                }
+                long ns = System.nanoTime() - start;
+                long allocated = allocatedSince(bytes);
+                if (tiles < flatTiles) throw new IllegalStateException("hierarchical path shorter than A*");
+                if (round == 1) {
+                    System.out.printf("hierarchy %4dx%-4d %6d nodes  build %.1f ms  gate update %.1f us  A* %.1f us  hierarchical %.1f us (%d B/op)  length +%.2f%%%n",
+                            map.width, map.height, paths.nodeCount(), buildNs / 1e6, updateNs / 1000.0 / Math.max(1, toggles),
+                            flatNs / 1000.0 / queries, ns / 1000.0 / queries, allocated / queries,
+                            100.0 * (tiles - flatTiles) / flatTiles);
+                }
+            }
+        }
+    }
+
+    private static void path(String name, TileMap map, int queries, boolean tunnels) {
+        MatchRandom random = new MatchRandom(7);
+        int[] pairs = new int[queries * 4];
+        for (int q = 0; q < queries; q++) {
+            for (int k = 0; k < 2; k++) {
+                int x, y;
+                do {
+                    x = random.nextInt(map.width);
+                    y = random.nextInt(map.height);
+                } while (map.isWall(x, y) || map.isGate(x, y));
+                pairs[4 * q + 2 * k] = x;
+                pairs[4 * q + 2 * k + 1] = y;
+            }
+        }
+        Pathfinder pathfinder = new Pathfinder();
+        int[] out = new int[map.width * map.height];
+        for (int round = 0; round < 2; round++) { // first round is warm-up
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long legacyTiles = 0;
+            for (int q = 0; q < queries; q++) {
+                legacyTiles += legacyAStar(pairs[4 * q], pairs[4 * q + 1], pairs[4 * q + 2], pairs[4 * q + 3], map, false).size();
+            }
+            long legacyNs = System.nanoTime() - start;
+            long legacyBytes = allocatedSince(bytes);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            long tiles = 0;
+            for (int q = 0; q < queries; q++) {
+                tiles += pathfinder.findPath(map, pairs[4 * q], pairs[4 * q + 1], pairs[4 * q + 2], pairs[4 * q + 3], false, out);
+            }
+            long ns = System.nanoTime() - start;
+            long allocated = allocatedSince(bytes);
+            // Pathfinder also takes the tunnels, so its paths can only be shorter (equal without tunnels)
+            if (tunnels ? tiles > legacyTiles : tiles != legacyTiles) throw new IllegalStateException("path lengths differ");
+            if (round == 1) {
+                System.out.printf("path %-8s legacy A* %.2f us (%d B/op)  Pathfinder %.2f us (%d B/op)  avg length %.1f%n",
+                        name, legacyNs / 1000.0 / queries, legacyBytes / queries,
+                        ns / 1000.0 / queries, allocated / queries, (double) tiles / queries);
+            }
+        }
+    }
+
+    // The A* findPath used to run per frame, kept for comparison
+    private static List<int[]> legacyAStar(int sx, int sy, int gx, int gy, TileMap map, boolean allowGate) {
+        List<int[]> empty = new ArrayList<>();
+        int rows = map.height, cols = map.width;
+        if (sx < 0 || sy < 0 || gx < 0 || gy < 0 || sy >= rows || sx >= cols || gy >= rows || gx >= cols) return empty;
+
+        class Node { int x,y; int g,f; Node p; Node(int x,int y,int g,int f,Node p){this.x=x;this.y=y;this.g=g;this.f=f;this.p=p;} }
+
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingInt(n->n.f));
+        boolean[][] closed = new boolean[rows][cols];
+        open.add(new Node(sx, sy, 0, Math.abs(sx-gx)+Math.abs(sy-gy), null));
+
+        while (!open.isEmpty()) {
+            Node cur = open.poll();
+            if (closed[cur.y][cur.x]) continue;
+            closed[cur.y][cur.x] = true;
+            if (cur.x == gx && cur.y == gy) {
+                List<int[]> path = new ArrayList<>();
+                Node n = cur;
+                while (n != null) { path.add(0, new int[]{n.x, n.y}); n = n.p; }
+                return path;
+            }
+
+            int[][] dirs = {{0,-1},{0,1},{-1,0},{1,0}};
+            for (int[] d : dirs) {
+                int nx = cur.x + d[0], ny = cur.y + d[1];
+                if (nx < 0 || ny < 0 || ny >= rows || nx >= cols) continue;
+                if (map.isWall(nx, ny)) continue;
+                if (!allowGate && map.isGate(nx, ny)) continue;
+                if (closed[ny][nx]) continue;
+                int ng = cur.g + 1;
+                int h = Math.abs(nx - gx) + Math.abs(ny - gy);
+                open.add(new Node(nx, ny, ng, ng + h, cur));
+            }
+        }
+        return empty;
+    }
+
+    // Large swarms with ghost AI inline and on the AI thread: time per tick on the stepping thread,
+    // time per plan on the AI thread and how much of the tick was spent waiting for it
+    static void planner() {
+        GameController.Difficulty diff = GameController.Difficulty.HARD;
+        GhostPlanner planner = new GhostPlanner();
+        for (int swarmSize : new int[]{1024, 4096}) {
+            for (int pass = 0; pass < 2; pass++) {
+                GameWorld world = new GameWorld();
+                world.setDifficulty(diff);
+                world.setSeed(1);
+                world.swarmSize = swarmSize;
+                world.setup(diff, true, false);
+                world.planner = pass == 1 ? planner : null;
+                int ticks = swarmSize >= 4096 ? 4_000 : 20_000;
+                for (int t = 0; t < ticks; t++) tick(world, t); // warm-up
+                planner.planNanos = planner.waitNanos = planner.plans = 0;
+                long start = System.nanoTime();
+                for (int t = 0; t < ticks; t++) tick(world, t);
+                long ns = System.nanoTime() - start;
+                if (pass == 0) {
+                    System.out.printf("planner %5d ghosts inline     %.2f us/tick%n", swarmSize, ns / 1000.0 / ticks);
+                } else {
+                    System.out.printf("planner %5d ghosts AI thread  %.2f us/tick  plan %.2f us  waited %.2f us/tick%n",
+                            swarmSize, ns / 1000.0 / ticks, planner.planNanos / 1000.0 / Math.max(1, planner.plans),
+                            planner.waitNanos / 1000.0 / ticks);
+                }
+            }
+        }
+        planner.shutdown();
+    }
+
+    // Scripted inputs; players are revived so the swarm keeps chasing
+    private static void tick(GameWorld world, int t) {
+        int events = world.step((byte) ((t / 40) % 4), (byte) ((t / 25 + 1) % 4));
+        if (world.allPlayersDown()) {
+            world.player1Alive = true;
+            world.player2Alive = true;
+        }
+        if ((events & GameWorld.EVENT_ALL_COLLECTED) != 0) world.setup(world.difficulty, true, false);
+    }
+
+    // Bytes allocated so far by this thread, or 0 if the JVM doesn't expose it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // Bytes allocated since an allocatedBytes() reading, less what the reading itself allocates
+    private static long allocatedSince(long bytes) {
+        long end = allocatedBytes();
+        long probe = allocatedBytes() - end;
+        return Math.max(0, end - bytes - probe);
+    }
+}
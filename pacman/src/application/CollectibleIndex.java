@@ -0,0 +1,145 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Incremental index of the collectibles left on the maze, so win checks and STATE
+ * serialisation don't have to scan the whole map.
+ *
+ * Keeps a remaining count per tile class and two sparse sets of tile ids (row * width + col):
+ * one for dots, one for every other collectible (power pellets, fruits, key). Both support
+ * O(1) add and removal. Their order depends on the history of writes, so simulation decisions
+ * must not depend on it (TileMap.nthDot picks dots canonically). Every map write that touches
+ * a collectible must be reported through {@link #onTileChanged}, or the index rebuilt with
+ * {@link #rebuild}.
+ */
+final class CollectibleIndex {
+    static final int DOT = 0;
+    static final int PELLET = 1;
+    static final int FRUIT = 2;
+    static final int KEY = 3;
+
+    private final int[] counts = new int[4];
+    private int width;
+
+    // Dots: dotTiles[0..dotSize) holds tile ids, dotSlot[tile] its position there or -1
+    private int[] dotTiles = new int[0];
+    private int[] dotSlot = new int[0];
+    private int dotSize;
+
+    // Power pellets, fruits and keys
+    private int[] pickupTiles = new int[0];
+    private int[] pickupSlot = new int[0];
+    private int pickupSize;
+
+    /** Tile class of a map value, or -1 if it is not a collectible. */
+    static int classOf(int val) {
+        if (val == 2) return DOT;
+        if (val == 3) return PELLET;
+        if (val >= 9 && val <= 15) return FRUIT;
+        if (val == 16) return KEY;
+        return -1;
+    }
+
+    /** Re-indexes the whole map; arrays are reused when the map size doesn't change. */
+    void rebuild(TileMap map) {
+        int rows = map.height;
+        width = map.width;
+        int tiles = rows * width;
+        if (dotSlot.length != tiles) {
+            dotTiles = new int[tiles];
+            dotSlot = new int[tiles];
+            pickupTiles = new int[tiles];
+            pickupSlot = new int[tiles];
+        }
+        Arrays.fill(dotSlot, -1);
+        Arrays.fill(pickupSlot, -1);
+        Arrays.fill(counts, 0);
+        dotSize = 0;
+        pickupSize = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < width; c++) {
+                add(r * width + c, classOf(map.get(c, r)));
+            }
+        }
+    }
+
+    /** Records that the tile at (row, col) changed from oldVal to newVal. */
+    void onTileChanged(int row, int col, int oldVal, int newVal) {
+        int oldClass = classOf(oldVal);
+        int newClass = classOf(newVal);
+        if (oldClass == newClass) return;
+        int tile = row * width + col;
+        remove(tile, oldClass);
+        add(tile, newClass);
+    }
+
+    /** Number of collectibles of any class still on the map. */
+    int remaining() {
+        return dotSize + pickupSize;
+    }
+
+    int count(int tileClass) {
+        return counts[tileClass];
+    }
+
+    int dotCount() {
+        return dotSize;
+    }
+
+    /** Tile id of the i-th remaining dot (0 <= i < dotCount()), in no particular order. */
+    int dotAt(int i) {
+        return dotTiles[i];
+    }
+
+    int pickupCount() {
+        return pickupSize;
+    }
+
+    /** Tile id of the i-th remaining power pellet, fruit or key (0 <= i < pickupCount()). */
+    int pickupAt(int i) {
+        return pickupTiles[i];
+    }
+
+    int rowOf(int tile) {
+        return tile / width;
+    }
+
+    int colOf(int tile) {
+        return tile % width;
+    }
+
+    private void add(int tile, int tileClass) {
+        if (tileClass < 0) return;
+        counts[tileClass]++;
+        if (tileClass == DOT) {
+            dotSlot[tile] = dotSize;
+            dotTiles[dotSize++] = tile;
+        } else {
+            pickupSlot[tile] = pickupSize;
+            pickupTiles[pickupSize++] = tile;
+        }
+    }
+
+    private void remove(int tile, int tileClass) {
+        if (tileClass < 0) return;
+        if (tileClass == DOT) {
+            if (dotSlot[tile] < 0) return;
+            dotSize = removeFrom(dotTiles, dotSlot, dotSize, tile);
+        } else {
+            if (pickupSlot[tile] < 0) return;
+            pickupSize = removeFrom(pickupTiles, pickupSlot, pickupSize, tile);
+        }
+        counts[tileClass]--;
+    }
+
+    // Swap-remove: move the last element into the freed slot
+    private static int removeFrom(int[] tiles, int[] slot, int size, int tile) {
+        int i = slot[tile];
+        int last = tiles[--size];
+        tiles[i] = last;
+        slot[last] = i;
+        slot[tile] = -1;
+        return size;
+    }
+}
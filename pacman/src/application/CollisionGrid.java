@@ -0,0 +1,117 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Collision broadphase over the maze: targets (players) are bucketed by tile, and each probe
+ * (ghost) only tests the targets in its own and the eight neighbouring cells, using squared
+ * distances. Works for any number of players and ghosts as long as the contact radius is no
+ * larger than a cell.
+ *
+ * Usage per tick: {@link #clear}, {@link #insert} every live target, then {@link #query} each
+ * probe and consume {@link #contact}(0 .. n-1). Nothing is allocated after the first tick.
+ */
+final class CollisionGrid {
+    private final double cellSize;
+    private final double radiusSq;
+    private int cols, rows;
+
+    // Per-cell singly linked lists of target ids: cellHead[cell] -> next[id] -> ... -> -1
+    private int[] cellHead = new int[0];
+    private int[] next = new int[8];
+    private double[] targetX = new double[8];
+    private double[] targetY = new double[8];
+    // Cells touched since the last clear, so clearing doesn't walk the whole grid
+    private int[] usedCells = new int[8];
+    private int usedCount;
+
+    private int[] contacts = new int[8];
+    private int contactCount;
+
+    CollisionGrid(double cellSize, double radius) {
+        if (radius > cellSize) {
+            throw new IllegalArgumentException("Contact radius " + radius + " exceeds cell size " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.radiusSq = radius * radius;
+    }
+
+    /** Sizes the grid for a map of cols x rows tiles; also clears it. */
+    void resize(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        if (cellHead.length != cols * rows) {
+            cellHead = new int[cols * rows];
+        }
+        Arrays.fill(cellHead, -1);
+        usedCount = 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < usedCount; i++) {
+            cellHead[usedCells[i]] = -1;
+        }
+        usedCount = 0;
+    }
+
+    /** Adds a target with a small non-negative id at the given pixel position. */
+    void insert(int id, double x, double y) {
+        if (id >= next.length) {
+            int size = Math.max(id + 1, next.length * 2);
+            next = Arrays.copyOf(next, size);
+            targetX = Arrays.copyOf(targetX, size);
+            targetY = Arrays.copyOf(targetY, size);
+        }
+        int cell = cellRow(y) * cols + cellCol(x);
+        if (cellHead[cell] < 0) {
+            if (usedCount == usedCells.length) usedCells = Arrays.copyOf(usedCells, usedCount * 2);
+            usedCells[usedCount++] = cell;
+        }
+        targetX[id] = x;
+        targetY[id] = y;
+        next[id] = cellHead[cell];
+        cellHead[cell] = id;
+    }
+
+    /**
+     * Finds every target closer than the contact radius to the given pixel position.
+     *
+     * @return number of contacts, readable through {@link #contact} in ascending target id order
+     */
+    int query(double x, double y) {
+        contactCount = 0;
+        int col = cellCol(x), row = cellRow(y);
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                for (int id = cellHead[r * cols + c]; id >= 0; id = next[id]) {
+                    double dx = targetX[id] - x, dy = targetY[id] - y;
+                    if (dx * dx + dy * dy < radiusSq) addContact(id);
+                }
+            }
+        }
+        return contactCount;
+    }
+
+    int contact(int i) {
+        return contacts[i];
+    }
+
+    // Insertion keeps contacts sorted so results don't depend on bucket order
+    private void addContact(int id) {
+        if (contactCount == contacts.length) contacts = Arrays.copyOf(contacts, contactCount * 2);
+        int i = contactCount++;
+        while (i > 0 && contacts[i - 1] > id) {
+            contacts[i] = contacts[i - 1];
+            i--;
+        }
+        contacts[i] = id;
+    }
+
+    private int cellCol(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    private int cellRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+}
@@ -0,0 +1,52 @@
+package application;
+
+/**
+ * Primitive direction encoding used by movement, ghost AI, rendering and the STATE protocol.
+ * Directions are bytes indexing precomputed tables, so the per-tick code never compares strings.
+ */
+final class Direction {
+    static final byte NONE = -1; // no input yet
+    static final byte UP = 0;
+    static final byte DOWN = 1;
+    static final byte LEFT = 2;
+    static final byte RIGHT = 3;
+    static final int COUNT = 4;
+
+    static final int[] DX = {0, 0, -1, 1};
+    static final int[] DY = {-1, 1, 0, 0};
+    static final byte[] OPPOSITE = {DOWN, UP, RIGHT, LEFT};
+    // Sprite rotation in degrees (sprites face right)
+    static final double[] ANGLE = {-90, 90, 180, 0};
+
+    private static final String[] NAMES = {"UP", "DOWN", "LEFT", "RIGHT"};
+
+    private Direction() {}
+
+    static int dx(byte dir) {
+        return dir >= 0 ? DX[dir] : 0;
+    }
+
+    static int dy(byte dir) {
+        return dir >= 0 ? DY[dir] : 0;
+    }
+
+    static boolean isOpposite(byte d1, byte d2) {
+        return d1 >= 0 && d2 >= 0 && OPPOSITE[d1] == d2;
+    }
+
+    /** Parses "UP", "DOWN", "LEFT" or "RIGHT" (as used by key names and INPUT messages); anything else is NONE. */
+    static byte parse(String name) {
+        if (name == null) return NONE;
+        switch (name) {
+            case "UP": return UP;
+            case "DOWN": return DOWN;
+            case "LEFT": return LEFT;
+            case "RIGHT": return RIGHT;
+            default: return NONE;
+        }
+    }
+
+    static String name(byte dir) {
+        return dir >= 0 ? NAMES[dir] : "";
+    }
+}
@@ -0,0 +1,194 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All-pairs walking distances (in tiles) between the walkable cells of a maze, for both gate
+ * modes: gates closed (players, ghosts on the loose) and gates open (eaten ghosts heading home).
+ * Built with one BFS per cell over the same moves Entity.move allows, tunnels included, and
+ * stored as shorts indexed by compact cell number, so a query is two lookups.
+ *
+ * Tables depend only on walls, gates and tunnels, and are cached by that layout across matches.
+ * Mazes with more than {@link #MAX_CELLS} walkable cells get no table; callers fall back to
+ * straight-line distance.
+ */
+final class DistanceTable {
+    static final int UNREACHABLE = -1;
+    // 4096 cells is 32 MB of shorts per gate mode; beyond that all-pairs stops paying off
+    static final int MAX_CELLS = 4096;
+
+    // Per-tile layout classes; only these matter for distances
+    private static final byte OPEN = 0;
+    private static final byte WALL = 1;
+    private static final byte GATE = 2;
+    private static final byte TUNNEL = 3;
+
+    private static final Map<Long, DistanceTable> CACHE = new ConcurrentHashMap<>();
+
+    final int width;
+    final int height;
+    private final byte[] layout;
+    private final Layer gatesClosed;
+    private final Layer gatesOpen;
+
+    // Distances for one gate mode: cellOf[tile] is the compact cell number or -1 if not walkable
+    private static final class Layer {
+        final int[] cellOf;
+        final int cells;
+        final short[] dist;
+
+        Layer(int[] cellOf, int cells, short[] dist) {
+            this.cellOf = cellOf;
+            this.cells = cells;
+            this.dist = dist;
+        }
+    }
+
+    private DistanceTable(int width, int height, byte[] layout, Layer gatesClosed, Layer gatesOpen) {
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.gatesClosed = gatesClosed;
+        this.gatesOpen = gatesOpen;
+    }
+
+    /** Table for the map's current layout, built on first use; null if the maze is too large. */
+    static DistanceTable forMap(TileMap map) {
+        byte[] layout = layoutOf(map);
+        long key = hash(map.width, map.height, layout);
+        DistanceTable cached = CACHE.get(key);
+        if (cached != null && cached.width == map.width && Arrays.equals(cached.layout, layout)) {
+            return cached;
+        }
+        DistanceTable table = build(map.width, map.height, layout);
+        if (table != null) CACHE.put(key, table);
+        return table;
+    }
+
+    /**
+     * Walking distance in tiles from one tile to another, or {@link #UNREACHABLE} if either tile
+     * is off the map or not walkable in this gate mode, or there is no way between them.
+     */
+    int distance(int fromX, int fromY, int toX, int toY, boolean gatesOpen) {
+        if (fromX < 0 || fromY < 0 || fromX >= width || fromY >= height) return UNREACHABLE;
+        if (toX < 0 || toY < 0 || toX >= width || toY >= height) return UNREACHABLE;
+        Layer layer = gatesOpen ? this.gatesOpen : gatesClosed;
+        int a = layer.cellOf[fromY * width + fromX];
+        int b = layer.cellOf[toY * width + toX];
+        if (a < 0 || b < 0) return UNREACHABLE;
+        return layer.dist[a * layer.cells + b];
+    }
+
+    /**
+     * Distance to the target from wherever one move in direction d lands (tunnels wrap), or
+     * {@link #UNREACHABLE} if the move is blocked. Lets steering compare neighbours the way
+     * Entity.move will actually take them.
+     */
+    int distanceAfterMove(int fromX, int fromY, byte d, int toX, int toY, boolean gatesOpen) {
+        if (fromX < 0 || fromY < 0 || fromX >= width || fromY >= height) return UNREACHABLE;
+        int next = step(layout, width, height, fromX, fromY, d, gatesOpen);
+        if (next < 0) return UNREACHABLE;
+        return distance(next % width, next / width, toX, toY, gatesOpen);
+    }
+
+    /**
+     * Tile id (y * width + x) one move along a shortest walk towards the target, or -1 if the
+     * target is unreachable or already reached. Following it repeatedly traces the whole path.
+     */
+    int nextTile(int fromX, int fromY, int toX, int toY, boolean gatesOpen) {
+        int d0 = distance(fromX, fromY, toX, toY, gatesOpen);
+        if (d0 <= 0) return -1;
+        for (byte d = 0; d < Direction.COUNT; d++) {
+            int next = step(layout, width, height, fromX, fromY, d, gatesOpen);
+            if (next >= 0 && distance(next % width, next / width, toX, toY, gatesOpen) == d0 - 1) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] layoutOf(TileMap map) {
+        byte[] layout = new byte[map.width * map.height];
+        for (int y = 0; y < map.height; y++) {
+            for (int x = 0; x < map.width; x++) {
+                byte c = OPEN;
+                if (map.isWall(x, y)) c = WALL;
+                else if (map.isGate(x, y)) c = GATE;
+                else if (map.get(x, y) == TileMap.TUNNEL) c = TUNNEL;
+                layout[y * map.width + x] = c;
+            }
+        }
+        return layout;
+    }
+
+    private static long hash(int width, int height, byte[] layout) {
+        long h = 0xcbf29ce484222325L ^ width ^ ((long) height << 32); // FNV-1a
+        for (byte b : layout) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static DistanceTable build(int width, int height, byte[] layout) {
+        Layer closed = buildLayer(width, height, layout, false);
+        if (closed == null) return null;
+        Layer open = buildLayer(width, height, layout, true);
+        if (open == null) return null;
+        return new DistanceTable(width, height, layout, closed, open);
+    }
+
+    private static Layer buildLayer(int width, int height, byte[] layout, boolean gatesOpen) {
+        int tiles = width * height;
+        int[] cellOf = new int[tiles];
+        int[] tileOf = new int[tiles];
+        int cells = 0;
+        for (int t = 0; t < tiles; t++) {
+            byte c = layout[t];
+            boolean walkable = c != WALL && (gatesOpen || c != GATE);
+            cellOf[t] = walkable ? cells : -1;
+            if (walkable) tileOf[cells++] = t;
+        }
+        if (cells > MAX_CELLS) return null;
+
+        short[] dist = new short[cells * cells];
+        Arrays.fill(dist, (short) UNREACHABLE);
+        int[] queue = new int[cells];
+        for (int src = 0; src < cells; src++) {
+            int row = src * cells;
+            int head = 0, tail = 0;
+            queue[tail++] = tileOf[src];
+            dist[row + src] = 0;
+            while (head < tail) {
+                int t = queue[head++];
+                int x = t % width, y = t / width;
+                int next = dist[row + cellOf[t]] + 1;
+                for (byte d = 0; d < Direction.COUNT; d++) {
+                    int n = step(layout, width, height, x, y, d, gatesOpen);
+                    if (n < 0) continue;
+                    int cell = cellOf[n];
+                    if (dist[row + cell] != UNREACHABLE) continue;
+                    dist[row + cell] = (short) next;
+                    queue[tail++] = n;
+                }
+            }
+        }
+        return new Layer(cellOf, cells, dist);
+    }
+
+    // Tile reached by one move from (x, y), following Entity.move: a tunnel tile wraps to the
+    // other side of the row, walls (and closed gates) block. -1 if the move is blocked.
+    private static int step(byte[] layout, int width, int height, int x, int y, byte d, boolean gatesOpen) {
+        int nx = x + Direction.DX[d], ny = y + Direction.DY[d];
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) return -1;
+        if (layout[ny * width + nx] == TUNNEL) {
+            if (d == Direction.LEFT) nx = width - 1;
+            else if (d == Direction.RIGHT) nx = 0;
+        }
+        byte c = layout[ny * width + nx];
+        if (c == WALL || (!gatesOpen && c == GATE)) return -1;
+        return ny * width + nx;
+    }
+}
@@ -1,12 +1,14 @@
 package application;
-import javafx.scene.paint.Color;
+
+import java.nio.ByteBuffer;
 
 class Entity {
     double pixelX, pixelY;
+    // Pixel position at the start of the current tick, used by the renderer to interpolate between ticks
+    double prevPixelX, prevPixelY;
     int gridX, gridY;
-    Color color;
     boolean isGhost;
-    String lastDir = "RIGHT"; // Defined here for everyone to see
+    byte lastDir = Direction.RIGHT; // Defined here for everyone to see
     double speed = 0.75;
     // State flags for interactions
     boolean ateDot = false;
@@ -14,10 +16,11 @@ class Entity {
     int spawnX = 14, spawnY = 14;
     int jailExitX = 14, jailExitY = 7;
 
-    Entity(int x, int y, Color c, boolean isGhost) {
+    Entity(int x, int y, boolean isGhost) {
         this.gridX = x; this.gridY = y;
         this.pixelX = x * 25; this.pixelY = y * 25;
-        this.color = c; this.isGhost = isGhost;
+        this.prevPixelX = pixelX; this.prevPixelY = pixelY;
+        this.isGhost = isGhost;
         this.spawnX = x; this.spawnY = y;
     }
     
@@ -28,7 +31,43 @@ class Entity {
         this.jailExitY = jailExitY;
     }
 
-    void move(String dir, int[][] map) {
+    void savePreviousPosition() {
+        prevPixelX = pixelX;
+        prevPixelY = pixelY;
+    }
+
+    /** Bytes written by {@link #writeState}. */
+    int stateSize() {
+        return 4 * 8 + 6 * 4 + 1 + 8;
+    }
+
+    // Fixed layout, part of the world snapshot format (see GameWorld.SNAPSHOT_VERSION)
+    void writeState(ByteBuffer buf) {
+        buf.putDouble(pixelX).putDouble(pixelY).putDouble(prevPixelX).putDouble(prevPixelY);
+        buf.putInt(gridX).putInt(gridY).putInt(spawnX).putInt(spawnY).putInt(jailExitX).putInt(jailExitY);
+        buf.put(lastDir).putDouble(speed);
+    }
+
+    void readState(ByteBuffer buf) {
+        pixelX = buf.getDouble(); pixelY = buf.getDouble();
+        prevPixelX = buf.getDouble(); prevPixelY = buf.getDouble();
+        gridX = buf.getInt(); gridY = buf.getInt();
+        spawnX = buf.getInt(); spawnY = buf.getInt();
+        jailExitX = buf.getInt(); jailExitY = buf.getInt();
+        lastDir = buf.get();
+        speed = buf.getDouble();
+        ateDot = false;
+    }
+
+    /** True if this tick's move() reaches the current tile, i.e. takes the next step in lastDir. */
+    boolean arrivesThisTick() {
+        double targetPX = gridX * 25, targetPY = gridY * 25;
+        double px = pixelX < targetPX ? Math.min(pixelX + speed, targetPX) : Math.max(pixelX - speed, targetPX);
+        double py = pixelY < targetPY ? Math.min(pixelY + speed, targetPY) : Math.max(pixelY - speed, targetPY);
+        return Math.abs(px - targetPX) < speed && Math.abs(py - targetPY) < speed;
+    }
+
+    void move(byte dir, TileMap map) {
         ateDot = false;
         double targetPX = gridX * 25;
         double targetPY = gridY * 25;
@@ -45,31 +84,25 @@ class Entity {
             // snap to exact grid to ensure consistent intersection detection
             pixelX = targetPX;
             pixelY = targetPY;
-            int nx = gridX, ny = gridY;
-            if (dir.equals("UP")) ny--;
-            else if (dir.equals("DOWN")) ny++;
-            else if (dir.equals("LEFT")) nx--;
-            else if (dir.equals("RIGHT")) nx++;
+            int nx = gridX + Direction.dx(dir), ny = gridY + Direction.dy(dir);
 
             // Handle tunnel (tile 7) wraparound
-            int mapHeight = map.length;
-            int mapWidth = map[0].length;
             boolean teleported = false;
             
             // Tunnel wraparound: if moving through a tunnel tile (7), wrap to the other side
-            if (ny >= 0 && ny < mapHeight && nx >= 0 && nx < mapWidth) {
-                if (map[ny][nx] == 7) {
+            if (map.inBounds(nx, ny)) {
+                if (map.get(nx, ny) == TileMap.TUNNEL) {
                     // Entering a tunnel tile - wrap around horizontally
-                    if (dir.equals("LEFT")) {
-                        nx = mapWidth - 1; // Wrap to the right side
+                    if (dir == Direction.LEFT) {
+                        nx = map.width - 1; // Wrap to the right side
                         teleported = true;
-                    } else if (dir.equals("RIGHT")) {
+                    } else if (dir == Direction.RIGHT) {
                         nx = 0; // Wrap to the left side
                         teleported = true;
                     }
                 }
                 
-                if (map[ny][nx] != 1 && (isGhost || (map[ny][nx] != 4 && map[ny][nx] != 5))) {
+                if (!map.isWall(nx, ny) && (isGhost || !map.isGate(nx, ny))) {
                     gridX = nx; gridY = ny;
                     // Instant teleport: immediately set pixel position when teleporting
                     if (teleported) {
@@ -77,7 +110,7 @@ class Entity {
                         pixelY = gridY * 25;
                     }
                     lastDir = dir; // Updates the direction they are successfully moving
-                    if (!isGhost && map[gridY][gridX] == 2) { map[gridY][gridX] = 0; ateDot = true; }
+                    if (!isGhost && map.hasDot(gridX, gridY)) { map.set(gridX, gridY, TileMap.EMPTY); ateDot = true; }
                 }
             }
         }
@@ -91,9 +124,23 @@ abstract class Ghost extends Entity {
     protected int jailTicks = 0; // ticks remaining while locked in jail (60 ticks = 1s)
     protected int targetX, targetY;
     protected boolean isEaten = false; // when true, ghost is eyes and returns to jail
-
-    Ghost(int x, int y, Color c, int sx, int sy) {
-        super(x, y, c, true);
+    // Maze distances for the current map; null falls back to straight-line distance
+    DistanceTable distances;
+    // Per-player flow fields kept current by GameWorld, read when the target is a player's tile
+    FlowField[] flowFields = NO_FIELDS;
+    static final FlowField[] NO_FIELDS = new FlowField[0];
+    // Exit masks of the current map; null makes the ghost decide every tick
+    JunctionGraph junctions;
+    // Paths through mazes too large for a distance table; null otherwise
+    HierarchicalPathfinder paths;
+    // Direction chosen ahead by GhostLookahead for this tick's decision, or Direction.NONE
+    byte forcedDir = Direction.NONE;
+    // Decision made a tick ahead by GhostPlanner, with its target, or Direction.NONE
+    byte plannedDir = Direction.NONE;
+    int plannedTargetX, plannedTargetY;
+
+    Ghost(int x, int y, int sx, int sy) {
+        super(x, y, true);
         this.scatterX = sx; this.scatterY = sy;
     }
 
@@ -105,7 +152,7 @@ abstract class Ghost extends Entity {
     }
 
     // FIX: Refer to GameController.GhostMode
-    void updateBehavior(int[][] map, Entity pacman, Ghost blinky, GameController.GhostMode mode) {
+    void updateBehavior(TileMap map, Entity pacman, Ghost blinky, GameController.GhostMode mode, MatchRandom random) {
         // If ghost was recently eaten and is locked in jail, wait until timer expires
         if (inJail && jailTicks > 0) {
             jailTicks--; // stay put in jail
@@ -113,9 +160,35 @@ abstract class Ghost extends Entity {
         } else if (inJail && jailTicks == 0) {
             // release from timed jail; allow normal in-jail behavior to move toward exit
             inJail = false;
-            lastDir = "UP"; // nudge movement upwards on release
+            lastDir = Direction.UP; // nudge movement upwards on release
+        }
+        // Roaming ghosts only decide where there's a choice: mid-tile the direction matters only once
+        // the ghost arrives, and in corridors and corners just one move is legal
+        if (junctions != null && !inJail && !isEaten && junctions.exits(gridX, gridY) != 0) {
+            if (!arrivesThisTick()) {
+                move(lastDir, map);
+                return;
+            }
+            int choices = junctions.choices(gridX, gridY, lastDir);
+            if (Integer.bitCount(choices) == 1) {
+                lastDir = (byte) Integer.numberOfTrailingZeros(choices);
+                move(lastDir, map);
+                return;
+            }
+        }
+        // Decided a tick ahead on the AI thread: take it if it's still legal (a lookahead pick wins)
+        if (plannedDir != Direction.NONE && forcedDir == Direction.NONE) {
+            byte d = plannedDir;
+            plannedDir = Direction.NONE;
+            if (junctions != null && !inJail && !isEaten && (junctions.choices(gridX, gridY, lastDir) & (1 << d)) != 0) {
+                targetX = plannedTargetX;
+                targetY = plannedTargetY;
+                lastDir = d;
+                move(lastDir, map);
+                return;
+            }
         }
-        // --- DECISION: compute target and desired direction every tick (not only when centered) ---
+        // --- DECISION: compute target and desired direction (at junctions, dead ends and in jail) ---
         // 1. SELECT TARGET (always available)
         if (isEaten) {
             targetX = spawnX; targetY = spawnY;
@@ -128,29 +201,36 @@ abstract class Ghost extends Entity {
         } else if (mode == GameController.GhostMode.SCATTER) {
             targetX = scatterX; targetY = scatterY;
         } else if (mode == GameController.GhostMode.FRIGHTENED) {
-            targetX = (int)(Math.random() * 28); targetY = (int)(Math.random() * 22);
+            targetX = random.nextInt(28); targetY = random.nextInt(22);
         } else {
             setTarget(pacman, blinky);
         }
 
         // 2. DIRECTION DECISION (Shortest distance to target). Prefer not reversing;
         // if there are no valid non-reverse options, allow reverse to avoid corner-hugging.
-        String[] dirs = {"UP", "DOWN", "LEFT", "RIGHT"};
-        String bestDir = lastDir;
+        byte bestDir = lastDir;
         double minDist = Double.MAX_VALUE;
         int validNonReverse = 0;
-
-        for (String d : dirs) {
-            if (isOpposite(d, lastDir)) continue;
-
-            int nx = gridX + (d.equals("LEFT") ? -1 : d.equals("RIGHT") ? 1 : 0);
-            int ny = gridY + (d.equals("UP") ? -1 : d.equals("DOWN") ? 1 : 0);
-
-            if (ny >= 0 && ny < map.length && nx >= 0 && nx < map[0].length && map[ny][nx] != 1) {
+        // Walk the maze towards walkable targets (a player's flow field if it leads there, else the
+        // distance table); off-map or wall targets keep the straight line
+        boolean gatesOpen = inJail || isEaten;
+        FlowField field = gatesOpen ? null : fieldTo(targetX, targetY);
+        if (field != null && field.distance(gridX, gridY) < 0) field = null;
+        boolean walk = field == null && distances != null && distances.distance(gridX, gridY, targetX, targetY, gatesOpen) >= 0;
+        // Without either, large mazes still give the first tile of a path to the target
+        int hop = field == null && !walk && !gatesOpen && paths != null ? paths.nextTile(gridX, gridY, targetX, targetY) : -1;
+
+        for (byte d = 0; d < Direction.COUNT; d++) {
+            if (Direction.isOpposite(d, lastDir)) continue;
+
+            int nx = gridX + Direction.DX[d];
+            int ny = gridY + Direction.DY[d];
+
+            if (map.inBounds(nx, ny) && !map.isWall(nx, ny)) {
                 // Allow ghosts in jail to pass through gates (4, 5) to exit
-                if (!inJail && !isEaten && (map[ny][nx] == 4 || map[ny][nx] == 5)) continue;
+                if (!inJail && !isEaten && map.isGate(nx, ny)) continue;
                 // If in jail, allow movement through gates but prefer paths to exit
-                if (inJail && (map[ny][nx] == 4 || map[ny][nx] == 5)) {
+                if (inJail && map.isGate(nx, ny)) {
                     // Check if this direction gets us closer to jail exit
                     double distToExit = Math.hypot(nx - jailExitX, ny - jailExitY);
                     double currentDistToExit = Math.hypot(gridX - jailExitX, gridY - jailExitY);
@@ -158,7 +238,18 @@ abstract class Ghost extends Entity {
                 }
 
                 validNonReverse++;
-                double dist = Math.hypot(nx - targetX, ny - targetY);
+                double dist;
+                if (field != null) {
+                    int steps = field.distanceAfterMove(gridX, gridY, d);
+                    dist = steps >= 0 ? steps : Double.MAX_VALUE;
+                } else if (walk) {
+                    int steps = distances.distanceAfterMove(gridX, gridY, d, targetX, targetY, gatesOpen);
+                    dist = steps >= 0 ? steps : Double.MAX_VALUE;
+                } else if (hop >= 0) {
+                    dist = map.neighbor(gridX, gridY, d, false) == hop ? 0 : 1 + Math.hypot(nx - targetX, ny - targetY);
+                } else {
+                    dist = Math.hypot(nx - targetX, ny - targetY);
+                }
                 if (dist < minDist) {
                     minDist = dist;
                     bestDir = d;
@@ -168,14 +259,14 @@ abstract class Ghost extends Entity {
 
         if (validNonReverse == 0) {
             // allow reverse if it's the only available move
-            for (String d : dirs) {
-                if (!isOpposite(d, lastDir)) continue; // we want the reverse
-                int nx = gridX + (d.equals("LEFT") ? -1 : d.equals("RIGHT") ? 1 : 0);
-                int ny = gridY + (d.equals("UP") ? -1 : d.equals("DOWN") ? 1 : 0);
-                if (ny >= 0 && ny < map.length && nx >= 0 && nx < map[0].length && map[ny][nx] != 1) {
-                    if (!inJail && !isEaten && (map[ny][nx] == 4 || map[ny][nx] == 5)) continue;
+            for (byte d = 0; d < Direction.COUNT; d++) {
+                if (!Direction.isOpposite(d, lastDir)) continue; // we want the reverse
+                int nx = gridX + Direction.DX[d];
+                int ny = gridY + Direction.DY[d];
+                if (map.inBounds(nx, ny) && !map.isWall(nx, ny)) {
+                    if (!inJail && !isEaten && map.isGate(nx, ny)) continue;
                     // If in jail and reverse is only option, allow it
-                    if (inJail && (map[ny][nx] == 4 || map[ny][nx] == 5)) {
+                    if (inJail && map.isGate(nx, ny)) {
                         // Allow reverse through gate if it's the only way
                     }
                     bestDir = d;
@@ -184,6 +275,14 @@ abstract class Ghost extends Entity {
             }
         }
 
+        // A lookahead pick for this decision wins if it's still legal here
+        if (forcedDir != Direction.NONE) {
+            if (junctions != null && !inJail && !isEaten && (junctions.choices(gridX, gridY, lastDir) & (1 << forcedDir)) != 0) {
+                bestDir = forcedDir;
+            }
+            forcedDir = Direction.NONE;
+        }
+
         // Set desired direction immediately; move() will attempt to honor it even mid-tile
         lastDir = bestDir;
         move(lastDir, map);
@@ -195,11 +294,6 @@ abstract class Ghost extends Entity {
         }
     }
 
-    private boolean isOpposite(String d1, String d2) {
-        return (d1.equals("UP") && d2.equals("DOWN")) || (d1.equals("DOWN") && d2.equals("UP")) ||
-                (d1.equals("LEFT") && d2.equals("RIGHT")) || (d1.equals("RIGHT") && d2.equals("LEFT"));
-    }
-
     void respawn() {
         // Find a valid position in jail area if spawn position is invalid
         // This is handled by GameController, but we ensure we're in a valid position
@@ -211,15 +305,67 @@ abstract class Ghost extends Entity {
         if (jailTicks == 0) jailTicks = 600;
         isEaten = false;
         // Reset direction to allow movement
-        lastDir = "UP";
+        lastDir = Direction.UP;
     }
     
+    /** True if this tick's update reaches a tile where there's a choice, i.e. makes a decision as a roaming ghost. */
+    boolean decidesThisTick() {
+        if (junctions == null || inJail || isEaten || junctions.exits(gridX, gridY) == 0) return false;
+        return arrivesThisTick() && Integer.bitCount(junctions.choices(gridX, gridY, lastDir)) > 1;
+    }
+
+    // Flow field leading to (x, y) if one of the players stands there, else null
+    FlowField fieldTo(int x, int y) {
+        for (FlowField f : flowFields) {
+            if (f.leadsTo(x, y)) return f;
+        }
+        return null;
+    }
+
+    // Walking distance to a tile when the maze is known, straight-line otherwise
+    double distanceTo(int x, int y) {
+        FlowField field = fieldTo(x, y);
+        if (field != null) {
+            int steps = field.distance(gridX, gridY);
+            if (steps >= 0) return steps;
+        }
+        if (distances != null) {
+            int steps = distances.distance(gridX, gridY, x, y, false);
+            if (steps >= 0) return steps;
+        }
+        return Math.hypot(gridX - x, gridY - y);
+    }
+
     // Method to set jail time based on difficulty
     void setJailTime(int ticks) {
         jailTicks = ticks;
     }
 
-    void setEaten(boolean v) { isEaten = v; if (v) lastDir = "UP"; }
+    @Override
+    int stateSize() {
+        return super.stateSize() + 2 + 5 * 4;
+    }
+
+    @Override
+    void writeState(ByteBuffer buf) {
+        super.writeState(buf);
+        buf.put((byte) (inJail ? 1 : 0)).put((byte) (isEaten ? 1 : 0));
+        buf.putInt(jailTicks).putInt(targetX).putInt(targetY).putInt(scatterX).putInt(scatterY);
+    }
+
+    @Override
+    void readState(ByteBuffer buf) {
+        super.readState(buf);
+        inJail = buf.get() != 0;
+        isEaten = buf.get() != 0;
+        jailTicks = buf.getInt();
+        targetX = buf.getInt(); targetY = buf.getInt();
+        scatterX = buf.getInt(); scatterY = buf.getInt();
+        forcedDir = Direction.NONE;
+        plannedDir = Direction.NONE;
+    }
+
+    void setEaten(boolean v) { isEaten = v; if (v) lastDir = Direction.UP; }
     boolean isEaten() { return isEaten; }
 }
 
@@ -227,7 +373,7 @@ abstract class Ghost extends Entity {
 // 🔴 BLINKY - Directly targets Pac-Man
 class Blinky extends Ghost {
     Blinky(int x, int y) {
-        super(x, y, Color.RED, 27, 0);
+        super(x, y, 27, 0);
     }
 
     @Override
@@ -239,8 +385,8 @@ class Blinky extends Ghost {
     @Override
     void setTargetMultiplayer(Entity p1, Entity p2, Ghost blinky, int p1DotsEaten, int p2DotsEaten) {
         // Blinky: The Enforcer - Target player with lowest distance, prioritize if they've eaten more dots
-        double dist1 = Math.hypot(gridX - p1.gridX, gridY - p1.gridY);
-        double dist2 = Math.hypot(gridX - p2.gridX, gridY - p2.gridY);
+        double dist1 = distanceTo(p1.gridX, p1.gridY);
+        double dist2 = distanceTo(p2.gridX, p2.gridY);
         
         Entity target = p1;
         if (dist2 < dist1) {
@@ -260,7 +406,7 @@ class Blinky extends Ghost {
 // 🌸 PINKY - Ambush: Targets 4 tiles ahead of Pac-Man
 class Pinky extends Ghost {
     Pinky(int x, int y) {
-        super(x, y, Color.PINK, 0, 0);
+        super(x, y, 0, 0);
     }
 
     @Override
@@ -270,10 +416,10 @@ class Pinky extends Ghost {
 
         // Target 4 tiles ahead based on lastDir
         switch (pacman.lastDir) {
-            case "UP" -> { tx -= 4; ty -= 4; } // Classic overflow bug
-            case "DOWN" -> ty += 4;
-            case "LEFT" -> tx -= 4;
-            case "RIGHT" -> tx += 4;
+            case Direction.UP -> { tx -= 4; ty -= 4; } // Classic overflow bug
+            case Direction.DOWN -> ty += 4;
+            case Direction.LEFT -> tx -= 4;
+            case Direction.RIGHT -> tx += 4;
         }
         this.targetX = tx;
         this.targetY = ty;
@@ -287,18 +433,18 @@ class Pinky extends Ghost {
         
         // Predict P1's future position
         switch (p1.lastDir) {
-            case "UP" -> { tx1 -= 4; ty1 -= 4; }
-            case "DOWN" -> ty1 += 4;
-            case "LEFT" -> tx1 -= 4;
-            case "RIGHT" -> tx1 += 4;
+            case Direction.UP -> { tx1 -= 4; ty1 -= 4; }
+            case Direction.DOWN -> ty1 += 4;
+            case Direction.LEFT -> tx1 -= 4;
+            case Direction.RIGHT -> tx1 += 4;
         }
         
         // Predict P2's future position
         switch (p2.lastDir) {
-            case "UP" -> { tx2 -= 4; ty2 -= 4; }
-            case "DOWN" -> ty2 += 4;
-            case "LEFT" -> tx2 -= 4;
-            case "RIGHT" -> tx2 += 4;
+            case Direction.UP -> { tx2 -= 4; ty2 -= 4; }
+            case Direction.DOWN -> ty2 += 4;
+            case Direction.LEFT -> tx2 -= 4;
+            case Direction.RIGHT -> tx2 += 4;
         }
         
         // Choose prediction that's closer to splitting the team (midpoint between both players)
@@ -322,7 +468,7 @@ class Pinky extends Ghost {
 // 🔵 INKY - Flanker: Uses Blinky's position to pinch Pac-Man
 class Inky extends Ghost {
     Inky(int x, int y) {
-        super(x, y, Color.CYAN, 27, 21);
+        super(x, y, 27, 21);
     }
 
     @Override
@@ -331,10 +477,10 @@ class Inky extends Ghost {
         int px = pacman.gridX;
         int py = pacman.gridY;
         switch (pacman.lastDir) {
-            case "UP" -> { px -= 2; py -= 2; }
-            case "DOWN" -> py += 2;
-            case "LEFT" -> px -= 2;
-            case "RIGHT" -> px += 2;
+            case Direction.UP -> { px -= 2; py -= 2; }
+            case Direction.DOWN -> py += 2;
+            case Direction.LEFT -> px -= 2;
+            case Direction.RIGHT -> px += 2;
         }
 
         // 2. Double the vector from Blinky to that tile
@@ -358,12 +504,12 @@ class Inky extends Ghost {
 // 🟠 CLYDE - Coward: Chases if far, retreats if close
 class Clyde extends Ghost {
     Clyde(int x, int y) {
-        super(x, y, Color.ORANGE, 0, 21);
+        super(x, y, 0, 21);
     }
 
     @Override
     void setTarget(Entity pacman, Ghost blinky) {
-        double distance = Math.hypot(gridX - pacman.gridX, gridY - pacman.gridY);
+        double distance = distanceTo(pacman.gridX, pacman.gridY);
 
         // Become more aggressive: reduce the distance threshold from 8 to 4
         if (distance > 4) {
@@ -379,8 +525,8 @@ class Clyde extends Ghost {
     @Override
     void setTargetMultiplayer(Entity p1, Entity p2, Ghost blinky, int p1DotsEaten, int p2DotsEaten) {
         // Clyde: The Troll - If far from both, chase closer one. If close to either, flee to other side
-        double dist1 = Math.hypot(gridX - p1.gridX, gridY - p1.gridY);
-        double dist2 = Math.hypot(gridX - p2.gridX, gridY - p2.gridY);
+        double dist1 = distanceTo(p1.gridX, p1.gridY);
+        double dist2 = distanceTo(p2.gridX, p2.gridY);
         
         if (dist1 < 8 || dist2 < 8) {
             // Close to at least one player - flee to the other player's scatter corner
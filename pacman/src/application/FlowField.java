@@ -0,0 +1,102 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Walking distance from every tile to one target tile (a player), plus the first step to take,
+ * built with a single BFS over the reversed moves. Any number of ghosts can then read their way
+ * to the target in O(1), so chasing costs one BFS per player tile change however many ghosts
+ * there are. Gates are closed: this is the maze as players and roaming ghosts see it.
+ *
+ * Moves are not symmetric around tunnels (stepping left from x = 1 lands on the far edge), so
+ * the BFS follows the edges backwards instead of forwards.
+ */
+final class FlowField {
+    private int[] dist = new int[0];   // steps to the target, -1 if it can't be reached
+    private byte[] next = new byte[0]; // direction of the first step, Direction.NONE at the target
+    private int[] queue = new int[0];
+
+    private TileMap map;
+    private int version;
+    private int targetX = -1, targetY = -1;
+
+    /** Rebuilds the field if the map, the target tile or the maze structure changed; returns whether it did. */
+    boolean update(TileMap map, int tx, int ty) {
+        if (this.map == map && leadsTo(tx, ty)) return false;
+        build(map, tx, ty);
+        return true;
+    }
+
+    /** True if the field leads to (x, y) and the maze hasn't changed since it was built. */
+    boolean leadsTo(int x, int y) {
+        return map != null && targetX == x && targetY == y && version == map.structureVersion();
+    }
+
+    /** Forgets the field, e.g. when another map is loaded. */
+    void invalidate() {
+        map = null;
+    }
+
+    /** Steps from (x, y) to the target, or -1 if unknown (off the map, not walkable, cut off). */
+    int distance(int x, int y) {
+        if (!map.inBounds(x, y)) return -1;
+        return dist[y * map.width + x];
+    }
+
+    /** Steps to the target from wherever one move in direction d lands, or -1 if blocked. */
+    int distanceAfterMove(int x, int y, byte d) {
+        if (!map.inBounds(x, y)) return -1;
+        int n = map.neighbor(x, y, d, false);
+        return n < 0 ? -1 : dist[n];
+    }
+
+    /** First step of a shortest walk from (x, y) to the target, or Direction.NONE. */
+    byte direction(int x, int y) {
+        if (!map.inBounds(x, y)) return Direction.NONE;
+        return next[y * map.width + x];
+    }
+
+    private void build(TileMap map, int tx, int ty) {
+        int tiles = map.width * map.height;
+        if (dist.length != tiles) {
+            dist = new int[tiles];
+            next = new byte[tiles];
+            queue = new int[tiles];
+        }
+        Arrays.fill(dist, -1);
+        Arrays.fill(next, Direction.NONE);
+        this.map = map;
+        this.version = map.structureVersion();
+        this.targetX = tx;
+        this.targetY = ty;
+        if (!map.inBounds(tx, ty) || map.isWall(tx, ty) || map.isGate(tx, ty)) return;
+
+        int w = map.width;
+        int head = 0, tail = 0;
+        dist[ty * w + tx] = 0;
+        queue[tail++] = ty * w + tx;
+        while (head < tail) {
+            int t = queue[head++];
+            int x = t % w, y = t / w;
+            // Tiles that reach t in one move: the four neighbours, and across the row for tunnels
+            tail = visitFrom(t, x - 1, y, Direction.RIGHT, tail);
+            tail = visitFrom(t, x + 1, y, Direction.LEFT, tail);
+            tail = visitFrom(t, x, y - 1, Direction.DOWN, tail);
+            tail = visitFrom(t, x, y + 1, Direction.UP, tail);
+            if (x == w - 1) tail = visitFrom(t, 1, y, Direction.LEFT, tail);
+            if (x == 0) tail = visitFrom(t, w - 2, y, Direction.RIGHT, tail);
+        }
+    }
+
+    // Enqueues (px, py) if moving d from it lands on tile t and it isn't reached yet
+    private int visitFrom(int t, int px, int py, byte d, int tail) {
+        if (!map.inBounds(px, py)) return tail;
+        int p = py * map.width + px;
+        if (dist[p] >= 0 || map.isWall(px, py) || map.isGate(px, py)) return tail;
+        if (map.neighbor(px, py, d, false) != t) return tail;
+        dist[p] = dist[t] + 1;
+        next[p] = d;
+        queue[tail++] = p;
+        return tail;
+    }
+}
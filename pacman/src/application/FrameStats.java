@@ -0,0 +1,30 @@
+package application;
+
+/**
+ * Render counters for the F4 stats overlay: draw calls issued to the GraphicsContext and time spent in
+ * render() for the last complete frame, plus what the last rebuild of the cached maze layer cost,
+ * how many pulses were skipped because nothing on screen changed and what loading the sprite
+ * atlas took.
+ * Draw sites bump {@link #drawCalls} themselves; only the FX thread touches it.
+ */
+final class FrameStats {
+    int drawCalls;           // frame in progress
+    int lastDrawCalls;       // last complete frame
+    long lastFrameNanos;
+    int mazeDrawCalls;       // last maze layer rebuild
+    int mazeBuilds;
+    long skipped;            // idle pulses that didn't render
+    int atlasSprites;        // sprite atlas, when it was first loaded
+    long atlasLoadNanos;
+    private long frameStart;
+
+    void begin() {
+        drawCalls = 0;
+        frameStart = System.nanoTime();
+    }
+
+    void end() {
+        lastDrawCalls = drawCalls;
+        lastFrameNanos = System.nanoTime() - frameStart;
+    }
+}
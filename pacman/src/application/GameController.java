@@ -11,14 +11,11 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.paint.Color;
-import javafx.scene.image.Image;
 import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.HashMap;
@@ -31,6 +28,8 @@ import java.util.concurrent.TimeUnit;
 public class GameController {
 
     @FXML private Canvas gameCanvas;
+    @FXML private Canvas mazeCanvas; // static layer under gameCanvas
+    @FXML private Canvas collectCanvas; // collectibles, between the two
     @FXML private Label scoreLabel;
     @FXML private Label score2Label;
     @FXML private ImageView player1CaughtIcon;
@@ -39,8 +38,48 @@ public class GameController {
 
     private final int TILE_SIZE = 25;
     private final double ENTITY_SPEED = 1.25;
+    private static final Color BACKGROUND = Color.web("#000033");
+    private static final Color DOT_COLOR = Color.web("#ffb8ae");
+    // Compose frames at a few pixels per tile and scale them up in one blit (big windows and mazes)
+    private static final boolean LOW_RES = Boolean.getBoolean("pacman.lowres");
+    // Outside live play, frames are only drawn when something visible changes, and at this interval
+    private static final long IDLE_REFRESH_NS = 500_000_000L;
+    // Fallback ghost colours by GhostStore personality
+    private static final Color[] SWARM_COLORS = {Color.RED, Color.PINK, Color.CYAN, Color.ORANGE};
+    // Swarm mode for offline play: -Dpacman.swarm=N adds N ghosts. STATE doesn't carry them, so network games never do
+    private static final int SWARM_SIZE = Integer.getInteger("pacman.swarm", 0);
+    // Per-tick planning budget in microseconds for the INSANE lookahead ghosts; 0 keeps them off
+    private static final int LOOKAHEAD_BUDGET_US = Integer.getInteger("pacman.lookahead", 0);
+    // Decide ghost moves on a separate thread, a tick ahead of the simulation
+    private static final boolean AI_THREAD = Boolean.getBoolean("pacman.aiThread");
+    private GhostPlanner planner;
+    // -Dpacman.simThread=true ticks offline matches on a simulation thread; render() then reads a
+    // copy of the world restored from its newest frame
+    private static final boolean SIM_THREAD = Boolean.getBoolean("pacman.simThread");
+    private SimulationLoop simulation;
+    private GameWorld view;
+    private java.nio.ByteBuffer viewSync = java.nio.ByteBuffer.allocate(0);
+    private long framePublishedNs;
+    private byte sentInput1 = Direction.NONE, sentInput2 = Direction.NONE;
+    // Debug overlay of each ghost's path to its target (F3 toggles); paths are only searched when they change
+    private boolean showGhostPaths = true;
+    // Render, AI thread and simulation thread stats in the top-left corner (F4 toggles)
+    private boolean showFrameStats = false;
+    private final PathCache pathCache = new PathCache(16);
+    private final Pathfinder pathfinder = new Pathfinder();
+    private int[] pathTiles = new int[256];
+    // Maze layer cache key: the map and its structure version it was drawn for, -1 when stale
+    private TileMap mazeDrawnFor;
+    private int mazeDrawnVersion = -1;
+    private final FrameStats frameStats = new FrameStats();
+    // Collectible layer: the map it shows (null when it must be redrawn)
+    private TileMap collectDrawnFor;
+    private final java.util.function.IntConsumer redrawCollectible = this::drawCollectible;
+    // Idle rendering: what the last frame showed, when it was drawn, and a request to draw anyway
+    private long lastFrameKey;
+    private long lastRenderNs;
+    private boolean redrawRequested = true;
     public enum GhostMode { SCATTER, CHASE, FRIGHTENED }
-    private GhostMode currentMode = GhostMode.SCATTER;
     
     // Difficulty settings
     public enum Difficulty { EASY, NORMAL, HARD, INSANE }
@@ -58,115 +97,33 @@ public class GameController {
         savedDifficulty = diff;
     }
     
-    private double entitySpeed = 0.75;
-    private double scatterDuration = 10.0; // seconds
-    private double chaseDuration = 10.0; // seconds
-    private double pointMultiplier = 0.8;
-
     // Game state: menu / running / paused
     private enum GameState { MENU, RUNNING, PAUSED }
     private GameState gameState = GameState.MENU;
 
-    private int globalTicks = 0;
-    private int powerModeTicks = 0;
-    private int powerPelletsEaten = 0;
     private boolean isGameOver = false;
     private boolean isGameFrozen = false; // Freeze game when player dies
-    private String currentInput = "";
-    private int score = 0;
+    private byte currentInput = Direction.NONE;
     // Sound players
     private javafx.scene.media.MediaPlayer wakawakaPlayer = null;
     private javafx.scene.media.MediaPlayer wakawakaPlayer2 = null; // For player 2
     private javafx.scene.media.MediaPlayer deathPlayer = null;
     private boolean wasMoving = false; // Track if player 1 was moving to play wakawaka sound
     private boolean wasMoving2 = false; // Track if player 2 was moving to play wakawaka sound
-    // Track dots eaten for weighted targeting
-    private int dotsEatenP1 = 0;
-    private int dotsEatenP2 = 0;
     private Stage primaryStage;
 
-    // Ghost sprite frames
-    private Image[] redGhostFrames, pinkGhostFrames, blueGhostFrames, orangeGhostFrames;
-    private Image[] afraidFrames;
-    private Image[] hurtFrames; // Hurt sprite for ghosts in prison
-    // invulnerable Pac-Man frames
-    private Image pacOpenInv, pacHalfInv, pacClosedInv;
-    // Pacwoman sprite frames (for player 2)
-    private Image pacwomanOpen, pacwomanHalf, pacwomanClosed;
-    private Image pacwomanOpenInv, pacwomanHalfInv, pacwomanClosedInv;
-
-    // Easy/Normal map (simpler)
-    private final int[][] MAP_EASY = {
-            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1},
-            {1,3,2,2,2,2,2,2,2,2,2,2,2,1,1,2,2,2,2,2,2,2,2,2,2,2,3,1},
-            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
-            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
-            {7,2,2,2,2,2,2,2,2,2,2,2,0,0,2,2,2,2,2,2,2,2,2,2,2,2,2,7}, // Tunnel Row
-            {1,1,1,1,2,1,1,1,2,1,1,4,5,5,4,1,1,2,1,1,1,2,1,1,1,1,1,1},
-            {1,1,1,1,2,1,1,1,2,1,4,4,4,4,4,4,1,2,1,1,1,2,1,1,1,1,1,1},
-            {1,2,2,2,2,2,2,2,2,1,1,1,1,1,1,1,1,2,2,2,2,2,2,2,2,2,2,1},
-            {1,2,1,1,1,1,2,1,2,2,2,2,2,2,2,2,2,2,2,1,2,1,1,1,1,1,2,1},
-            {1,2,1,1,1,1,2,1,1,1,2,1,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1},
-            {1,3,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,3,1},
-            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}
-    };
-
-    // Hard/Insane map (original complex map)
-    private final int[][] MAP_HARD = {
-            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1},
-            {1,2,2,2,2,2,2,2,2,2,2,2,2,1,1,2,2,2,2,2,2,2,2,2,2,2,2,1},
-            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
-            {1,3,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,3,1},
-            {1,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,1},
-            {1,2,1,1,1,1,2,1,1,2,1,1,1,1,1,1,1,1,2,1,1,2,1,1,1,1,2,1},
-            {1,2,2,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,2,2,1},
-            {1,1,1,1,1,1,2,1,1,1,1,1,0,1,1,0,1,1,1,1,1,2,1,1,1,1,1,1},
-            {0,0,0,0,0,1,2,1,1,0,0,0,0,0,0,0,0,0,0,1,1,2,1,0,0,0,0,0},
-            {1,1,1,1,1,1,2,1,1,0,1,1,4,5,5,4,1,1,0,1,1,2,1,1,1,1,1,1},
-            {7,0,0,0,0,0,2,0,0,0,1,4,4,4,4,4,4,1,0,0,0,2,0,0,0,0,0,7},
-            {1,1,1,1,1,1,2,1,1,0,1,4,4,4,4,4,4,1,0,1,1,2,1,1,1,1,1,1},
-            {0,0,0,0,0,1,2,1,1,0,1,1,1,1,1,1,1,1,0,1,1,2,1,0,0,0,0,0},
-            {1,1,1,1,1,1,2,1,1,0,2,2,2,2,2,2,2,2,0,1,1,2,1,1,1,1,1,1},
-            {1,2,2,2,2,2,2,2,2,2,1,1,1,2,1,1,1,2,2,2,2,2,2,2,2,2,2,1},
-            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
-            {1,3,2,2,1,1,2,2,2,2,2,2,2,0,0,2,2,2,2,2,2,2,1,1,2,2,3,1},
-            {1,1,1,2,1,1,2,1,1,2,1,1,1,1,1,1,1,1,2,1,1,2,1,1,2,1,1,1},
-            {1,2,2,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,2,2,1},
-            {1,2,1,1,1,1,1,1,1,1,1,1,2,1,1,2,1,1,1,1,1,1,1,1,1,1,2,1},
-            {1,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,1},
-            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}
-    };
-    
-    // Current map (switched based on difficulty) - initialized in setupGame
-    private int[][] MAP;
+    // Players, ghosts, fruits and keys, shared by every match in the process
+    private SpriteAtlas sprites;
+    private LowResRenderer lowRes; // null unless LOW_RES
 
-    private Entity pacman;
-    private Entity pacman2;
+    // Headless simulation (map, players, ghosts, rules); this controller only drives and renders it
+    private final GameWorld world = new GameWorld();
+    private GameWorld shown = world; // what render() draws: world, or view while the simulation thread runs
     private boolean localTwoPlayer = false;
-    private boolean player1Alive = true;
-    private boolean player2Alive = true;
-    private String currentInput2 = "";
-    private int score2 = 0;
+    private byte currentInput2 = Direction.NONE;
     private NetworkManager networkManager = null;
     private boolean hostMode = false;
     private boolean networkClientMode = false;
-    private List<Ghost> allGhosts = new ArrayList<>();
-    // Pac-Man sprite frames
-    private Image pacOpen, pacHalf, pacClosed;
-    
-    // Bonus fruit images (7 fruits: apple, bell, cherries, galaxian, melon, orange, strawberry)
-    // Values: 9-15 for fruits, 16 for key (8 is always free)
-    private Image[] bonusFruitImages = new Image[7];
-    private Image keyImage;
-    
-    // Key and fruit state
-    private boolean player1HasKey = false;
-    private boolean player2HasKey = false;
-    private boolean keySpawned = false;
-    private int transformationTicks = 0; // Counter for transformation timing
-    private static final int TRANSFORMATION_INTERVAL = 1800; // ~30 seconds at 60fps
-    private static final double FRUIT_TRANSFORMATION_CHANCE = 0.15; // 15% chance
-    private static final double KEY_TRANSFORMATION_CHANCE = 0.05; // 5% chance (only in multiplayer)
 
     @FXML
     public void initialize() {
@@ -177,31 +134,73 @@ public class GameController {
         // the bottom rows are not clipped by a fixed canvas height.
         // setupGame() will be called, which uses currentDifficulty
         setupGame();
-        if (MAP != null && gameCanvas != null) {
-            int canvasWidth = MAP[0].length * TILE_SIZE;
-            int canvasHeight = MAP.length * TILE_SIZE;
+        if (world.map != null && gameCanvas != null) {
+            int canvasWidth = world.map.width * TILE_SIZE;
+            int canvasHeight = world.map.height * TILE_SIZE;
             gameCanvas.setWidth(canvasWidth);
             gameCanvas.setHeight(canvasHeight);
         }
         gc = gameCanvas.getGraphicsContext2D();
-        loadPacmanImages();
-        loadGhostImages();
-        loadBonusFruitImages();
+        mazeCanvas.widthProperty().bind(gameCanvas.widthProperty());
+        mazeCanvas.heightProperty().bind(gameCanvas.heightProperty());
+        collectCanvas.widthProperty().bind(gameCanvas.widthProperty());
+        collectCanvas.heightProperty().bind(gameCanvas.heightProperty());
+        // A resize clears the canvases, so draw the layers again
+        gameCanvas.widthProperty().addListener((obs, old, w) -> { mazeDrawnVersion = -1; collectDrawnFor = null; });
+        gameCanvas.heightProperty().addListener((obs, old, h) -> { mazeDrawnVersion = -1; collectDrawnFor = null; });
+        sprites = SpriteAtlas.get(TILE_SIZE - 4);
+        frameStats.atlasSprites = sprites.loaded;
+        frameStats.atlasLoadNanos = sprites.loadNanos;
+        if (LOW_RES) lowRes = new LowResRenderer(TILE_SIZE);
         loadSounds();
         initializeBottomBar();
 
         new AnimationTimer() {
             @Override
             public void handle(long now) {
-                // update timestamp for interpolation calculations
+                // Advance the simulation at a fixed 60 ticks/second, independent of the display refresh rate
                 if (gameState == GameState.RUNNING && !isGameOver) {
-                    update();
+                    if (SIM_THREAD && !hostMode && !networkClientMode) pumpSimulation(now);
+                    else advanceSimulation(now);
+                } else {
+                    // Don't replay time spent in the menu or paused once the game resumes
+                    lastPulseNs = 0L;
+                    tickAccumulatorNs = 0L;
+                    stopSimulation();
                 }
-                render();
+                if (shouldRender(now)) render();
+                else frameStats.skipped++;
             }
         }.start();
     }
 
+    // Every pulse while the match is live. In the menu, paused, frozen after a death or on the end
+    // screen only when what the frame shows changed, plus a slow refresh for anything that changes
+    // behind our back (sound callbacks, network messages).
+    private boolean shouldRender(long now) {
+        boolean live = gameState == GameState.RUNNING && !isGameOver && !isGameFrozen;
+        long key = idleFrameKey();
+        if (!live && !redrawRequested && key == lastFrameKey && now - lastRenderNs < IDLE_REFRESH_NS) {
+            return false;
+        }
+        redrawRequested = false;
+        lastFrameKey = key;
+        lastRenderNs = now;
+        return true;
+    }
+
+    // Everything an idle frame depends on, folded into one value
+    private long idleFrameKey() {
+        long key = gameState.ordinal();
+        key = key * 31 + (isGameOver ? 1 : 0) + (isGameFrozen ? 2 : 0) + (showGhostPaths ? 4 : 0) + (showFrameStats ? 8 : 0);
+        key = key * 31 + shown.globalTicks;
+        key = key * 31 + shown.score;
+        key = key * 31 + lastReceivedStateSeq;
+        key = key * 31 + System.identityHashCode(shown.map);
+        key = key * 31 + Double.hashCode(gameCanvas.getWidth() * 4096 + gameCanvas.getHeight());
+        return key;
+    }
+
     // Networking helpers
     private final ConcurrentLinkedQueue<String> incomingNetworkInputs = new ConcurrentLinkedQueue<>();
     private ScheduledExecutorService stateBroadcaster = null;
@@ -213,7 +212,13 @@ public class GameController {
     // Fixed-tick simulation (60 ticks/second)
     private volatile int currentTick = 0;
     private final int TICKS_PER_SECOND = 60;
-    private long tickStartTimeNs = 0L;
+    private final long TICK_NS = 1_000_000_000L / TICKS_PER_SECOND;
+    // Most ticks run in one pulse after a stall; older backlog is dropped so the game slows down instead of spiralling
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private long lastPulseNs = 0L;
+    private long tickAccumulatorNs = 0L;
+    // Fraction of a tick elapsed since the last simulated tick (0..1), used to interpolate drawn positions
+    private double renderAlpha = 1.0;
 
     // Client-side prediction
     private volatile int predictedTick = 0;
@@ -231,72 +236,6 @@ public class GameController {
     private long interpStartNs = 0L;
     private long interpDurationNs = 33_000_000L; // ~33ms
 
-    private void loadPacmanImages() {
-        try {
-            pacOpen = new Image(Paths.get("src/ressource/pacman/open.png").toUri().toString());
-            pacHalf = new Image(Paths.get("src/ressource/pacman/half-open.png").toUri().toString());
-            pacClosed = new Image(Paths.get("src/ressource/pacman/closed.png").toUri().toString());
-            pacOpenInv = new Image(Paths.get("src/ressource/pacman/open-invulnerable.png").toUri().toString());
-            pacHalfInv = new Image(Paths.get("src/ressource/pacman/half-open-invulnerable.png").toUri().toString());
-            pacClosedInv = new Image(Paths.get("src/ressource/pacman/closed-invulnerable.png").toUri().toString());
-            
-            // Load pacwoman sprites for player 2
-            pacwomanOpen = new Image(Paths.get("src/ressource/pacwoman/open.png").toUri().toString());
-            pacwomanHalf = new Image(Paths.get("src/ressource/pacwoman/half-open.png").toUri().toString());
-            pacwomanClosed = new Image(Paths.get("src/ressource/pacwoman/closed.png").toUri().toString());
-            pacwomanOpenInv = new Image(Paths.get("src/ressource/pacwoman/open-invulnerable.png").toUri().toString());
-            pacwomanHalfInv = new Image(Paths.get("src/ressource/pacwoman/half-open-invulnerable.png").toUri().toString());
-            pacwomanClosedInv = new Image(Paths.get("src/ressource/pacwoman/closed-invulnerable.png").toUri().toString());
-        } catch (Exception e) {
-            System.err.println("Failed to load pacman/pacwoman images: " + e.getMessage());
-            pacOpen = pacHalf = pacClosed = null;
-            pacOpenInv = pacHalfInv = pacClosedInv = null;
-            pacwomanOpen = pacwomanHalf = pacwomanClosed = null;
-            pacwomanOpenInv = pacwomanHalfInv = pacwomanClosedInv = null;
-        }
-    }
-
-    private void loadGhostImages() {
-        try {
-            redGhostFrames = new Image[8];
-            pinkGhostFrames = new Image[8];
-            blueGhostFrames = new Image[8];
-            orangeGhostFrames = new Image[8];
-            for (int i = 0; i < 8; i++) {
-                redGhostFrames[i] = new Image(Paths.get("src/ressource/ghosts/red/" + (i+1) + ".png").toUri().toString());
-                pinkGhostFrames[i] = new Image(Paths.get("src/ressource/ghosts/pink/" + (i+1) + ".png").toUri().toString());
-                blueGhostFrames[i] = new Image(Paths.get("src/ressource/ghosts/blue/" + (i+1) + ".png").toUri().toString());
-                orangeGhostFrames[i] = new Image(Paths.get("src/ressource/ghosts/orange/" + (i+1) + ".png").toUri().toString());
-            }
-            afraidFrames = new Image[2];
-            afraidFrames[0] = new Image(Paths.get("src/ressource/ghosts/afraid/1.png").toUri().toString());
-            afraidFrames[1] = new Image(Paths.get("src/ressource/ghosts/afraid/2.png").toUri().toString());
-            
-            // Load hurt frames for ghosts in prison
-            hurtFrames = new Image[2];
-            hurtFrames[0] = new Image(Paths.get("src/ressource/ghosts/hurt/1.png").toUri().toString());
-            hurtFrames[1] = new Image(Paths.get("src/ressource/ghosts/hurt/2.png").toUri().toString());
-        } catch (Exception e) {
-            System.err.println("Failed to load ghost images: " + e.getMessage());
-            redGhostFrames = pinkGhostFrames = blueGhostFrames = orangeGhostFrames = null;
-            afraidFrames = null;
-            hurtFrames = null;
-        }
-    }
-
-    private void loadBonusFruitImages() {
-        try {
-            String[] fruitNames = {"apple", "bell", "cherries", "galaxian", "melon", "orange", "strawberry"};
-            for (int i = 0; i < fruitNames.length; i++) {
-                bonusFruitImages[i] = new Image(Paths.get("src/ressource/bonus/" + fruitNames[i] + ".png").toUri().toString());
-            }
-            keyImage = new Image(Paths.get("src/ressource/bonus/key.png").toUri().toString());
-        } catch (Exception e) {
-            System.err.println("Failed to load bonus fruit images: " + e.getMessage());
-            bonusFruitImages = new Image[7];
-        }
-    }
-    
     private void loadSounds() {
         try {
             // Load wakawaka sound for player 1
@@ -330,37 +269,28 @@ public class GameController {
         if (score2Label != null) {
             score2Label.setVisible(false); // Hide score2 label if not in multiplayer
         }
+        // Closed-mouth player sprites from the atlas as caught icons
         if (player1CaughtIcon != null) {
-            try {
-                // Use closed pacman sprite as caught icon
-                Image caughtIcon = new Image(Paths.get("src/ressource/pacman/closed.png").toUri().toString());
-                player1CaughtIcon.setImage(caughtIcon);
-                player1CaughtIcon.setVisible(false);
-            } catch (Exception e) {
-                System.err.println("Failed to load caught icon: " + e.getMessage());
-            }
+            player1CaughtIcon.setImage(sprites.texture);
+            player1CaughtIcon.setViewport(sprites.viewport(SpriteAtlas.player(0, false, 2, Direction.RIGHT)));
+            player1CaughtIcon.setVisible(false);
         }
         if (player2CaughtIcon != null) {
-            try {
-                // Use closed pacwoman sprite as caught icon
-                Image caughtIcon2 = new Image(Paths.get("src/ressource/pacwoman/closed.png").toUri().toString());
-                player2CaughtIcon.setImage(caughtIcon2);
-                player2CaughtIcon.setVisible(false);
-            } catch (Exception e) {
-                System.err.println("Failed to load caught icon 2: " + e.getMessage());
-            }
+            player2CaughtIcon.setImage(sprites.texture);
+            player2CaughtIcon.setViewport(sprites.viewport(SpriteAtlas.player(1, false, 2, Direction.RIGHT)));
+            player2CaughtIcon.setVisible(false);
         }
     }
 
     private void updateBottomBar() {
         // Update scores
         if (scoreLabel != null) {
-            scoreLabel.setText("Score: " + score);
+            scoreLabel.setText("Score: " + shown.score);
         }
         if (score2Label != null) {
             if (localTwoPlayer || hostMode || networkClientMode) {
                 score2Label.setVisible(true);
-                score2Label.setText("Score 2: " + score2);
+                score2Label.setText("Score 2: " + shown.score2);
             } else {
                 score2Label.setVisible(false);
             }
@@ -368,11 +298,11 @@ public class GameController {
         
         // Update caught player icons
         if (player1CaughtIcon != null) {
-            player1CaughtIcon.setVisible(!player1Alive);
+            player1CaughtIcon.setVisible(!shown.player1Alive);
         }
         if (player2CaughtIcon != null) {
             if (localTwoPlayer || hostMode || networkClientMode) {
-                player2CaughtIcon.setVisible(!player2Alive);
+                player2CaughtIcon.setVisible(!shown.player2Alive);
             } else {
                 player2CaughtIcon.setVisible(false);
             }
@@ -383,167 +313,28 @@ public class GameController {
     public void setupGameAfterDifficultyChange() {
         setupGame();
         // Resize canvas after setup
-        if (MAP != null && gameCanvas != null) {
-            int canvasWidth = MAP[0].length * TILE_SIZE;
-            int canvasHeight = MAP.length * TILE_SIZE;
+        if (world.map != null && gameCanvas != null) {
+            int canvasWidth = world.map.width * TILE_SIZE;
+            int canvasHeight = world.map.height * TILE_SIZE;
             gameCanvas.setWidth(canvasWidth);
             gameCanvas.setHeight(canvasHeight);
         }
     }
     
     private void setupGame() {
-        // Initialize or re-initialize map based on current difficulty
-        if (currentDifficulty == Difficulty.EASY || currentDifficulty == Difficulty.NORMAL) {
-            MAP = deepCopyMap(MAP_EASY);
-        } else {
-            MAP = deepCopyMap(MAP_HARD);
-        }
-        
-        // Determine spawn positions based on difficulty
-        int mapHeight = MAP.length;
-        int mapWidth = MAP[0].length;
-        
-        // Spawn positions determined by difficulty level
-        int pacmanSpawnX, pacmanSpawnY, pacman2SpawnX, pacman2SpawnY;
-        int ghostSpawnX, ghostSpawnY;
-
-        switch (currentDifficulty) {
-            case EASY:
-                // Easy map: Bottom middle for pacman, ghosts inside jail
-                pacmanSpawnX = 14;
-                pacmanSpawnY = 10; // Bottom middle area
-                pacman2SpawnX = 13;
-                pacman2SpawnY = 10;
-                ghostSpawnX = 13;  // Center of jail area
-                ghostSpawnY = 6;   // Inside jail (row 6 has jail tiles 4)
-                break;
-            case NORMAL:
-                // Normal map: Standard spawn positions
-                pacmanSpawnX = 14;
-                pacmanSpawnY = 10; // Row 16 is a clear path in MAP_HARD
-                pacman2SpawnX = 13;
-                pacman2SpawnY = 10;
-                ghostSpawnX = 13;  // Center of jail area
-                ghostSpawnY = 10;  // Inside jail
-                break;
-            case HARD:
-                // Hard mode: spawn Pac-Man at y=14 for increased challenge
-                pacmanSpawnX = 14;
-                pacmanSpawnY = 16; // Hard mode: Pac-Man starts at row 14
-                pacman2SpawnX = 13;
-                pacman2SpawnY = 16;
-                ghostSpawnX = 13;  // Center of jail area
-                ghostSpawnY = 11;  // Place ghosts deeper inside jail for Hard mode
-                break;
-            case INSANE:
-                // Insane mode: deepest starting position for maximum challenge
-                pacmanSpawnX = 14;
-                pacmanSpawnY = 16; // 3 blocks down from row 16
-                pacman2SpawnX = 13;
-                pacman2SpawnY = 16;
-                ghostSpawnX = 13;  // Center of jail area
-                ghostSpawnY = 10;  // Inside jail
-                break;
-            default:
-                // Fallback to normal
-                pacmanSpawnX = 14;
-                pacmanSpawnY = 16;
-                pacman2SpawnX = 13;
-                pacman2SpawnY = 16;
-                ghostSpawnX = 13;
-                ghostSpawnY = 10;
-                break;
-        }
-        
-        // Clamp spawn positions to map bounds
-        pacmanSpawnX = Math.max(0, Math.min(pacmanSpawnX, mapWidth - 1));
-        pacmanSpawnY = Math.max(0, Math.min(pacmanSpawnY, mapHeight - 1));
-        pacman2SpawnX = Math.max(0, Math.min(pacman2SpawnX, mapWidth - 1));
-        pacman2SpawnY = Math.max(0, Math.min(pacman2SpawnY, mapHeight - 1));
-        ghostSpawnX = Math.max(0, Math.min(ghostSpawnX, mapWidth - 1));
-        ghostSpawnY = Math.max(0, Math.min(ghostSpawnY, mapHeight - 1));
-        
-        pacman = new Entity(pacmanSpawnX, pacmanSpawnY, Color.YELLOW, false);
-        pacman.speed = entitySpeed;
-        if (localTwoPlayer || hostMode || networkClientMode) {
-            pacman2 = new Entity(pacman2SpawnX, pacman2SpawnY, Color.LIME, false);
-            pacman2.speed = entitySpeed;
-        } else {
-            pacman2 = null;
-        }
-        player1Alive = true; player2Alive = (pacman2 != null);
-        // Set ghost speeds and spawn positions
-        // Jail exit: Easy map door at row 4, Hard map door at row 9 (exit path at row 8)
-        int ghostJailExitX = ghostSpawnX;
-        int ghostJailExitY = (mapHeight == 12) ? 4 : 8; // Easy map: row 4, Hard map: row 8
-        
-        // Find valid spawn positions in jail area (tiles 4 or 5, or empty space 0)
-        List<int[]> validJailPositions = new ArrayList<>();
-        for (int r = Math.max(0, ghostSpawnY - 2); r < Math.min(MAP.length, ghostSpawnY + 3); r++) {
-            for (int c = Math.max(0, ghostSpawnX - 2); c < Math.min(MAP[0].length, ghostSpawnX + 3); c++) {
-                int val = MAP[r][c];
-                // Valid jail positions: empty (0), jail floor (4), or jail gate (5)
-                if (val == 0 || val == 4 || val == 5) {
-                    validJailPositions.add(new int[]{c, r});
-                }
-            }
-        }
-        
-        // If no valid positions found, use default spawn positions
-        if (validJailPositions.isEmpty()) {
-            validJailPositions.add(new int[]{ghostSpawnX, ghostSpawnY});
-            validJailPositions.add(new int[]{ghostSpawnX + 1, ghostSpawnY});
-            validJailPositions.add(new int[]{ghostSpawnX - 1, ghostSpawnY});
-            validJailPositions.add(new int[]{ghostSpawnX + 2, ghostSpawnY});
-        }
-        
-        allGhosts.clear();
-        // Assign spawn positions to ghosts, ensuring they're in valid jail positions
-        int[] blinkyPos = validJailPositions.get(0 % validJailPositions.size());
-        Ghost blinky = new Blinky(blinkyPos[0], blinkyPos[1]);
-        blinky.speed = entitySpeed;
-        blinky.setSpawnPositions(blinkyPos[0], blinkyPos[1], ghostJailExitX, ghostJailExitY);
-        allGhosts.add(blinky);
-        
-        int[] pinkyPos = validJailPositions.get(1 % validJailPositions.size());
-        Ghost pinky = new Pinky(pinkyPos[0], pinkyPos[1]);
-        pinky.speed = entitySpeed;
-        pinky.setSpawnPositions(pinkyPos[0], pinkyPos[1], ghostJailExitX, ghostJailExitY);
-        allGhosts.add(pinky);
-        
-        int[] inkyPos = validJailPositions.get(2 % validJailPositions.size());
-        Ghost inky = new Inky(inkyPos[0], inkyPos[1]);
-        inky.speed = entitySpeed;
-        inky.setSpawnPositions(inkyPos[0], inkyPos[1], ghostJailExitX, ghostJailExitY);
-        allGhosts.add(inky);
-        
-        int[] clydePos = validJailPositions.get(3 % validJailPositions.size());
-        Ghost clyde = new Clyde(clydePos[0], clydePos[1]);
-        clyde.speed = entitySpeed;
-        clyde.setSpawnPositions(clydePos[0], clydePos[1], ghostJailExitX, ghostJailExitY);
-        allGhosts.add(clyde);
-        
-        // Set jail times based on difficulty
-        int jailTicks = getJailTicksForDifficulty(currentDifficulty);
-        for (Ghost g : allGhosts) {
-            g.setJailTime(jailTicks);
-        }
-        score = 0;
-        score2 = 0;
-        dotsEatenP1 = 0;
-        dotsEatenP2 = 0;
-        player1HasKey = false;
-        player2HasKey = false;
-        keySpawned = false;
-        transformationTicks = 0;
+        stopSimulation();
+        world.swarmSize = (hostMode || networkClientMode) ? 0 : SWARM_SIZE;
+        world.setup(currentDifficulty, localTwoPlayer || hostMode || networkClientMode, localTwoPlayer || hostMode);
+        // Clients only mirror the host's ghosts
+        boolean lookahead = currentDifficulty == Difficulty.INSANE && LOOKAHEAD_BUDGET_US > 0 && !networkClientMode;
+        world.lookahead = lookahead ? new GhostLookahead(LOOKAHEAD_BUDGET_US * 1000L) : null;
     }
-    
-    private int[][] deepCopyMap(int[][] source) {
-        int[][] copy = new int[source.length][];
-        for (int i = 0; i < source.length; i++) {
-            copy[i] = source[i].clone();
-        }
-        return copy;
+
+    // The AI thread only runs while the match does: started before stepping, shut down by stopSimulation
+    private void attachPlanner() {
+        if (!AI_THREAD || networkClientMode || planner != null) return;
+        planner = new GhostPlanner();
+        world.planner = planner;
     }
 
     // Public method to set difficulty and start single player
@@ -614,8 +405,7 @@ public class GameController {
                 String line;
                 while ((line = in.readLine()) != null) {
                     if (line.startsWith("INPUT:")) {
-                        String dir = line.substring(6);
-                        currentInput2 = dir;
+                        currentInput2 = Direction.parse(line.substring(6));
                     }
                 }
             } catch (Exception e) {
@@ -642,11 +432,10 @@ public class GameController {
                 if (msg.startsWith("INPUT:")) {
                     String[] parts = msg.split(":");
                     if (parts.length >= 2) {
-                        String dir = parts[1];
-                        currentInput2 = dir;
+                        currentInput2 = Direction.parse(parts[1]);
                         System.out.println("[GameController] host UDP input: " + msg);
                     }
-                } else if ("GAMESTART".equals(msg)) {
+                } else if (msg.startsWith("GAMESTART")) {
                     // Client sent game start (shouldn't happen, host controls start)
                 }
             });
@@ -660,47 +449,51 @@ public class GameController {
                 StringBuilder sb = new StringBuilder();
                 sb.append("STATE:");
                 // Player 1 state: gridX,gridY,pixelX,pixelY,lastDir
-                sb.append(pacman.gridX).append(',').append(pacman.gridY).append(',').append((int)pacman.pixelX).append(',').append((int)pacman.pixelY).append(',');
-                sb.append(pacman.lastDir != null ? pacman.lastDir : "RIGHT").append(',');
+                sb.append(world.pacman.gridX).append(',').append(world.pacman.gridY).append(',').append((int)world.pacman.pixelX).append(',').append((int)world.pacman.pixelY).append(',');
+                sb.append(world.pacman.lastDir).append(',');
                 // Player 2 state: gridX,gridY,pixelX,pixelY,lastDir
-                if (pacman2 != null) {
-                    sb.append(pacman2.gridX).append(',').append(pacman2.gridY).append(',').append((int)pacman2.pixelX).append(',').append((int)pacman2.pixelY).append(',');
-                    sb.append(pacman2.lastDir != null ? pacman2.lastDir : "RIGHT").append(',');
+                if (world.pacman2 != null) {
+                    sb.append(world.pacman2.gridX).append(',').append(world.pacman2.gridY).append(',').append((int)world.pacman2.pixelX).append(',').append((int)world.pacman2.pixelY).append(',');
+                    sb.append(world.pacman2.lastDir).append(',');
                 } else {
-                    sb.append("-1,-1,-1,-1,RIGHT,");
+                    sb.append("-1,-1,-1,-1,").append(Direction.RIGHT).append(',');
                 }
                 // Scores and alive flags
-                sb.append(score).append(',').append(score2).append(',');
-                sb.append(player1Alive ? '1' : '0').append(',').append(player2Alive ? '1' : '0').append(',');
+                sb.append(world.score).append(',').append(world.score2).append(',');
+                sb.append(world.player1Alive ? '1' : '0').append(',').append(world.player2Alive ? '1' : '0').append(',');
                 // Game mode state
-                sb.append(currentMode == GhostMode.FRIGHTENED ? 'F' : (currentMode == GhostMode.CHASE ? 'C' : 'S')).append(',');
-                sb.append(powerModeTicks).append(',').append(powerPelletsEaten).append(',');
+                sb.append(world.currentMode == GhostMode.FRIGHTENED ? 'F' : (world.currentMode == GhostMode.CHASE ? 'C' : 'S')).append(',');
+                sb.append(world.powerModeTicks).append(',').append(world.powerPelletsEaten).append(',');
                 // Key states: player1HasKey, player2HasKey, keySpawned
-                sb.append(player1HasKey ? '1' : '0').append(',').append(player2HasKey ? '1' : '0').append(',').append(keySpawned ? '1' : '0').append(',');
+                sb.append(world.player1HasKey ? '1' : '0').append(',').append(world.player2HasKey ? '1' : '0').append(',').append(world.keySpawned ? '1' : '0').append(',');
                 // Ghost states: all 4 ghosts with full state (gridX,gridY,pixelX,pixelY,isEaten,inJail,jailTicks,lastDir)
                 for (int i = 0; i < 4; i++) {
-                    Ghost g = allGhosts.get(i);
+                    Ghost g = world.allGhosts.get(i);
                     sb.append(g.gridX).append(',').append(g.gridY).append(',').append((int)g.pixelX).append(',').append((int)g.pixelY).append(',');
                     sb.append(g.isEaten() ? 1 : 0).append(',');
                     sb.append(g.inJail ? 1 : 0).append(',').append(g.jailTicks).append(',');
-                    sb.append(g.lastDir != null ? g.lastDir : "RIGHT").append(',');
+                    sb.append(g.lastDir).append(',');
                 }
                 // Map state: send compressed map (dots, power pellets, fruits, and keys: row,col,value)
                 // Format: mapCount,row1,col1,val1,row2,col2,val2,...
+                // Taken from the collectible index instead of scanning the whole map
                 int mapCount = 0;
                 StringBuilder mapData = new StringBuilder();
-                for (int r = 0; r < MAP.length; r++) {
-                    for (int c = 0; c < MAP[r].length; c++) {
-                        int val = MAP[r][c];
-                        if (val == 2 || val == 3 || (val >= 9 && val <= 16)) { // dots, power pellets, fruits (9-15), or key (16)
-                            mapData.append(r).append(',').append(c).append(',').append(val).append(',');
-                            mapCount++;
-                        }
+                CollectibleIndex collectibles = world.collectibles;
+                int dotCount = collectibles.dotCount();
+                int pickupCount = collectibles.pickupCount();
+                for (int i = 0; i < dotCount + pickupCount; i++) {
+                    int tile = i < dotCount ? collectibles.dotAt(i) : collectibles.pickupAt(i - dotCount);
+                    int r = collectibles.rowOf(tile), c = collectibles.colOf(tile);
+                    int val = world.map.get(c, r);
+                    if (CollectibleIndex.classOf(val) >= 0) { // dots, power pellets, fruits (9-15), or key (16)
+                        mapData.append(r).append(',').append(c).append(',').append(val).append(',');
+                        mapCount++;
                     }
                 }
                 sb.append(mapCount).append(',').append(mapData);
                 // Sequence and ticks for synchronization
-                sb.append(stateSeq++).append(',').append(globalTicks).append(',').append(currentTick);
+                sb.append(stateSeq++).append(',').append(world.globalTicks).append(',').append(currentTick);
                 // Send via both TCP and UDP for redundancy
                 String stateMsg = sb.toString();
                 networkManager.sendToClient(stateMsg);
@@ -738,24 +531,18 @@ public class GameController {
                                 udpClient.startReceiver(msg -> {
                                     if (msg.startsWith("STATE:")) {
                                         processStateMessage(msg.substring(6));
-                                    } else if ("GAMESTART".equals(msg)) {
+                                    } else if (msg.startsWith("GAMESTART")) {
                                         // Host started the game via UDP
-                                        Platform.runLater(() -> {
-                                            gameState = GameState.RUNNING;
-                                            isGameOver = false;
-                                        });
+                                        startFromHost(msg);
                                     }
                                 });
                             }
                         } catch (Exception e) {
                             System.out.println("[GameController] client UDP init from port message error: " + e.getMessage());
                         }
-                    } else if ("GAMESTART".equals(line)) {
+                    } else if (line.startsWith("GAMESTART")) {
                         // Host started the game, start it for client too
-                        Platform.runLater(() -> {
-                            gameState = GameState.RUNNING;
-                            isGameOver = false;
-                        });
+                        startFromHost(line);
                     }
                 }
             } catch (Exception e) {
@@ -773,12 +560,9 @@ public class GameController {
                 udpClient.startReceiver(msg -> {
                     if (msg.startsWith("STATE:")) {
                         processStateMessage(msg.substring(6));
-                    } else if ("GAMESTART".equals(msg)) {
+                    } else if (msg.startsWith("GAMESTART")) {
                         // Host started the game via UDP
-                        Platform.runLater(() -> {
-                            gameState = GameState.RUNNING;
-                            isGameOver = false;
-                        });
+                        startFromHost(msg);
                     }
                 });
             }
@@ -787,6 +571,24 @@ public class GameController {
         }
     }
 
+    // GAMESTART:<seed> from the host (TCP or UDP); a bare GAMESTART keeps the current seed
+    private void startFromHost(String msg) {
+        long seed;
+        try {
+            seed = msg.length() > 10 ? Long.parseLong(msg.substring(10)) : world.seed;
+        } catch (NumberFormatException e) {
+            System.out.println("[GameController] bad GAMESTART seed: " + msg);
+            seed = world.seed;
+        }
+        final long fSeed = seed;
+        Platform.runLater(() -> {
+            // The start arrives over both TCP and UDP; only the first one may reset the generator
+            if (world.seed != fSeed) world.setSeed(fSeed);
+            gameState = GameState.RUNNING;
+            isGameOver = false;
+        });
+    }
+
     private void processStateMessage(String data) {
         String[] parts = data.split(",");
         try {
@@ -798,14 +600,14 @@ public class GameController {
             int p1gy = Integer.parseInt(parts[idx++]);
             int p1px = Integer.parseInt(parts[idx++]);
             int p1py = Integer.parseInt(parts[idx++]);
-            String p1dir = parts[idx++];
+            byte p1dir = Byte.parseByte(parts[idx++]);
             
             // Player 2: gridX, gridY, pixelX, pixelY, lastDir
             int p2gx = Integer.parseInt(parts[idx++]);
             int p2gy = Integer.parseInt(parts[idx++]);
             int p2px = Integer.parseInt(parts[idx++]);
             int p2py = Integer.parseInt(parts[idx++]);
-            String p2dir = parts[idx++];
+            byte p2dir = Byte.parseByte(parts[idx++]);
             
             // Scores and alive flags
             int s1 = Integer.parseInt(parts[idx++]);
@@ -832,7 +634,7 @@ public class GameController {
             
             // Ghost states: 4 ghosts, each with 8 values (gridX,gridY,pixelX,pixelY,isEaten,inJail,jailTicks,lastDir)
             int[][] ghostStates = new int[4][8];
-            String[] ghostDirs = new String[4];
+            byte[] ghostDirs = new byte[4];
             for (int gi = 0; gi < 4; gi++) {
                 if (idx + 7 >= parts.length) break;
                 ghostStates[gi][0] = Integer.parseInt(parts[idx++]); // gridX
@@ -842,38 +644,29 @@ public class GameController {
                 ghostStates[gi][4] = Integer.parseInt(parts[idx++]); // isEaten
                 ghostStates[gi][5] = Integer.parseInt(parts[idx++]); // inJail
                 ghostStates[gi][6] = Integer.parseInt(parts[idx++]); // jailTicks
-                ghostDirs[gi] = parts[idx++]; // lastDir
+                ghostDirs[gi] = Byte.parseByte(parts[idx++]); // lastDir
             }
             
-            // Map state: mapCount, then row,col,val pairs
-            int mapCount = 0;
+            // Map state: mapCount, then row,col,val pairs (applied on the FX thread with the rest of the state)
+            int mapCount = -1;
+            int[] mapTiles = null;
             if (idx < parts.length) {
                 try {
                     mapCount = Integer.parseInt(parts[idx++]);
-                    // Update map with received state - host sends all remaining dots/pellets/fruits/keys
-                    // First, reset all dots, power pellets, fruits, and keys that were previously there
-                    for (int r = 0; r < MAP.length; r++) {
-                        for (int c = 0; c < MAP[r].length; c++) {
-                            if (MAP[r][c] == 2 || MAP[r][c] == 3 || (MAP[r][c] >= 9 && MAP[r][c] <= 16)) {
-                                MAP[r][c] = 0; // Clear all dots/pellets/fruits/keys first
-                            }
-                        }
-                    }
-                    // Then set the ones that still exist (from host's authoritative state)
+                    // Host sends all remaining dots/pellets/fruits/keys
+                    mapTiles = new int[Math.max(0, mapCount) * 3];
+                    int parsed = 0;
                     for (int i = 0; i < mapCount && idx + 2 < parts.length; i++) {
-                        int r = Integer.parseInt(parts[idx++]);
-                        int c = Integer.parseInt(parts[idx++]);
-                        int val = Integer.parseInt(parts[idx++]);
-                        if (r >= 0 && r < MAP.length && c >= 0 && c < MAP[r].length) {
-                            // Restore dots, power pellets, fruits (9-15), and keys (16) that still exist
-                            if (val == 2 || val == 3 || (val >= 9 && val <= 16)) {
-                                MAP[r][c] = val;
-                            }
-                        }
+                        mapTiles[i * 3] = Integer.parseInt(parts[idx++]);
+                        mapTiles[i * 3 + 1] = Integer.parseInt(parts[idx++]);
+                        mapTiles[i * 3 + 2] = Integer.parseInt(parts[idx++]);
+                        parsed++;
                     }
+                    mapCount = parsed;
                 } catch (NumberFormatException e) {
                     // Map parsing failed, continue
                     System.err.println("[GameController] Map state parse error: " + e.getMessage());
+                    mapCount = -1;
                 }
             }
             
@@ -897,68 +690,70 @@ public class GameController {
             
             // Store values for Platform.runLater
             final int fp1gx = p1gx, fp1gy = p1gy, fp1px = p1px, fp1py = p1py;
-            final String fp1dir = p1dir;
+            final byte fp1dir = p1dir;
             final int fp2gx = p2gx, fp2gy = p2gy, fp2px = p2px, fp2py = p2py;
-            final String fp2dir = p2dir;
+            final byte fp2dir = p2dir;
             final int fs1 = s1, fs2 = s2;
             final int falive1 = alive1, falive2 = alive2;
             final String fmodeStr = modeStr;
             final int fpwrTicks = pwrTicks, fpwrPellets = pwrPellets;
             final int fp1Key = p1Key, fp2Key = p2Key, fkeySpawn = keySpawn;
             final int[][] fghostStates = ghostStates;
-            final String[] fghostDirs = ghostDirs;
+            final byte[] fghostDirs = ghostDirs;
             final int fReceivedGlobalTick = receivedGlobalTick;
             final int fReceivedTick = receivedTick;
+            final int fMapCount = mapCount;
+            final int[] fMapTiles = mapTiles;
             
             Platform.runLater(() -> {
                 try {
                     // Update player 1
-                    if (pacman != null && fp1gx >= 0) {
-                        pacman.gridX = fp1gx;
-                        pacman.gridY = fp1gy;
-                        pacman.lastDir = fp1dir;
-                        prevP1px = (int)pacman.pixelX;
-                        prevP1py = (int)pacman.pixelY;
+                    if (world.pacman != null && fp1gx >= 0) {
+                        world.pacman.gridX = fp1gx;
+                        world.pacman.gridY = fp1gy;
+                        world.pacman.lastDir = fp1dir;
+                        prevP1px = (int)world.pacman.pixelX;
+                        prevP1py = (int)world.pacman.pixelY;
                         tgtP1px = fp1px;
                         tgtP1py = fp1py;
                     }
                     
                     // Update player 2
-                    if (pacman2 != null && fp2gx >= 0) {
-                        pacman2.gridX = fp2gx;
-                        pacman2.gridY = fp2gy;
-                        pacman2.lastDir = fp2dir;
-                        prevP2px = (int)pacman2.pixelX;
-                        prevP2py = (int)pacman2.pixelY;
+                    if (world.pacman2 != null && fp2gx >= 0) {
+                        world.pacman2.gridX = fp2gx;
+                        world.pacman2.gridY = fp2gy;
+                        world.pacman2.lastDir = fp2dir;
+                        prevP2px = (int)world.pacman2.pixelX;
+                        prevP2py = (int)world.pacman2.pixelY;
                         tgtP2px = fp2px;
                         tgtP2py = fp2py;
                     }
                     
                     // Update scores and alive flags
-                    score = fs1;
-                    score2 = fs2;
-                    player1Alive = (falive1 == 1);
-                    player2Alive = (falive2 == 1);
+                    world.score = fs1;
+                    world.score2 = fs2;
+                    world.player1Alive = (falive1 == 1);
+                    world.player2Alive = (falive2 == 1);
                     
                     // Update game mode
                     if (fmodeStr.equals("F")) {
-                        currentMode = GhostMode.FRIGHTENED;
+                        world.currentMode = GhostMode.FRIGHTENED;
                     } else if (fmodeStr.equals("C")) {
-                        currentMode = GhostMode.CHASE;
+                        world.currentMode = GhostMode.CHASE;
                     } else {
-                        currentMode = GhostMode.SCATTER;
+                        world.currentMode = GhostMode.SCATTER;
                     }
-                    powerModeTicks = fpwrTicks;
-                    powerPelletsEaten = fpwrPellets;
+                    world.powerModeTicks = fpwrTicks;
+                    world.powerPelletsEaten = fpwrPellets;
                     
                     // Update key states
-                    player1HasKey = (fp1Key == 1);
-                    player2HasKey = (fp2Key == 1);
-                    keySpawned = (fkeySpawn == 1);
+                    world.player1HasKey = (fp1Key == 1);
+                    world.player2HasKey = (fp2Key == 1);
+                    world.keySpawned = (fkeySpawn == 1);
                     
                     // Update ghost states
-                    for (int gi = 0; gi < 4 && gi < allGhosts.size(); gi++) {
-                        Ghost g = allGhosts.get(gi);
+                    for (int gi = 0; gi < 4 && gi < world.allGhosts.size(); gi++) {
+                        Ghost g = world.allGhosts.get(gi);
                         g.gridX = fghostStates[gi][0];
                         g.gridY = fghostStates[gi][1];
                         g.pixelX = fghostStates[gi][2];
@@ -969,8 +764,13 @@ public class GameController {
                         g.lastDir = fghostDirs[gi];
                     }
                     
+                    // Restore dots, power pellets, fruits and keys that still exist (from host's authoritative state)
+                    if (fMapCount >= 0) {
+                        world.replaceCollectibles(fMapTiles, fMapCount);
+                    }
+
                     // Sync ticks
-                    if (fReceivedGlobalTick >= 0) globalTicks = fReceivedGlobalTick;
+                    if (fReceivedGlobalTick >= 0) world.globalTicks = fReceivedGlobalTick;
                     if (fReceivedTick >= 0) currentTick = fReceivedTick;
                     
                     // Start interpolation
@@ -996,7 +796,7 @@ public class GameController {
      * Returns width and height as a double array [width, height].
      */
     public double[] getSceneDimensions() {
-        if (MAP == null || gameCanvas == null) {
+        if (world.map == null || gameCanvas == null) {
             // Default fallback dimensions
             return new double[]{700, 560};
         }
@@ -1013,90 +813,194 @@ public class GameController {
     }
 
     public void setInitialPacmanSpeed(double s) {
-        entitySpeed = s;
-        if (pacman != null) pacman.speed = s;
-        if (pacman2 != null) pacman2.speed = s;
-        for (Ghost g : allGhosts) {
-            g.speed = s;
-        }
+        world.setEntitySpeed(s);
     }
-    
-    private int getJailTicksForDifficulty(Difficulty diff) {
-        switch (diff) {
-            case EASY: return 600;   // 10 seconds (600 ticks @ 60fps)
-            case NORMAL: return 480; // 8 seconds (480 ticks @ 60fps)
-            case HARD: return 360;   // 6 seconds (360 ticks @ 60fps)
-            case INSANE: return 240; // 4 seconds (240 ticks @ 60fps)
-            default: return 600;
-        }
-    }
-    
+
     public void setDifficulty(Difficulty diff) {
         this.currentDifficulty = diff;
         savedDifficulty = diff; // Save difficulty for persistence across scene changes
-        // Set difficulty-specific parameters
-        switch (diff) {
-            case EASY:
-                entitySpeed = 0.75;
-                scatterDuration = 10.0;
-                chaseDuration = 10.0;
-                pointMultiplier = 0.8;
-                break;
-            case NORMAL:
-                entitySpeed = 0.75;
-                scatterDuration = 8.0;
-                chaseDuration = 12.0;
-                pointMultiplier = 1.0;
-                break;
-            case HARD:
-                entitySpeed = 0.9;
-                scatterDuration = 7.0;
-                chaseDuration = 15.0;
-                pointMultiplier = 1.2;
-                break;
-            case INSANE:
-                entitySpeed = 1.05;
-                scatterDuration = 6.0;
-                chaseDuration = 20.0;
-                pointMultiplier = 1.5;
-                break;
-        }
-        // Update map based on difficulty
-        if (diff == Difficulty.EASY || diff == Difficulty.NORMAL) {
-            MAP = deepCopyMap(MAP_EASY);
-        } else {
-            MAP = deepCopyMap(MAP_HARD);
-        }
+        // Set difficulty-specific parameters and load the matching map
+        world.setDifficulty(diff);
         // Resize canvas to match new map dimensions
-        if (MAP != null && gameCanvas != null) {
-            int canvasWidth = MAP[0].length * TILE_SIZE;
-            int canvasHeight = MAP.length * TILE_SIZE;
+        if (world.map != null && gameCanvas != null) {
+            int canvasWidth = world.map.width * TILE_SIZE;
+            int canvasHeight = world.map.height * TILE_SIZE;
             gameCanvas.setWidth(canvasWidth);
             gameCanvas.setHeight(canvasHeight);
         }
-        // Apply speed to entities
-        setInitialPacmanSpeed(entitySpeed);
-        // Update jail times for all ghosts
-        int jailTicks = getJailTicksForDifficulty(diff);
-        for (Ghost g : allGhosts) {
-            g.setJailTime(jailTicks);
+    }
+
+    private void advanceSimulation(long now) {
+        attachPlanner();
+        if (lastPulseNs == 0L) {
+            lastPulseNs = now;
+        }
+        tickAccumulatorNs += now - lastPulseNs;
+        lastPulseNs = now;
+
+        int ticks = 0;
+        while (tickAccumulatorNs >= TICK_NS && ticks < MAX_CATCH_UP_TICKS) {
+            update();
+            tickAccumulatorNs -= TICK_NS;
+            ticks++;
+            if (gameState != GameState.RUNNING || isGameOver) {
+                tickAccumulatorNs = 0L;
+                break;
+            }
+        }
+        if (tickAccumulatorNs >= TICK_NS) {
+            // Still behind after the catch-up limit: drop the backlog
+            tickAccumulatorNs %= TICK_NS;
+        }
+        renderAlpha = (double) tickAccumulatorNs / TICK_NS;
+    }
+
+    // Simulation-thread counterpart of advanceSimulation: handles the events the loop halted on,
+    // keeps it running exactly while the match is live and picks up its newest frame for render()
+    private void pumpSimulation(long now) {
+        if (simulation == null) simulation = new SimulationLoop(world);
+        int events = simulation.takeEvents();
+        if (events != 0) {
+            // The loop is halted until resume(), so the world is ours to read here
+            updateMovementSounds();
+            if (handleTickEvents(events)) finishIfGameOver();
+        }
+        if (gameState != GameState.RUNNING || isGameOver || isGameFrozen) {
+            stopSimulation();
+            return;
+        }
+        if (!simulation.isActive()) {
+            startSimulation(now);
+        } else if (events != 0) {
+            simulation.resume();
+        }
+        sendInputs();
+        long published = simulation.poll(view);
+        if (published >= 0) framePublishedNs = published;
+        renderAlpha = Math.max(0.0, Math.min(1.0, (double) (now - framePublishedNs) / TICK_NS));
+        if (events == 0) updateMovementSounds();
+    }
+
+    // Hands the world to the simulation thread; render() shows a copy of it from now on
+    private void startSimulation(long now) {
+        if (view == null || view.difficulty != world.difficulty || (view.pacman2 != null) != (world.pacman2 != null)
+                || view.allGhosts.size() != world.allGhosts.size()) {
+            view = new GameWorld();
+            view.setDifficulty(world.difficulty);
+            view.setup(world.difficulty, world.pacman2 != null, world.keysEnabled);
+        }
+        int size = world.snapshotSize();
+        if (viewSync.capacity() < size) viewSync = java.nio.ByteBuffer.allocate(size);
+        viewSync.clear();
+        world.snapshotInto(viewSync);
+        viewSync.flip();
+        view.restoreFrom(viewSync);
+        shown = view;
+        framePublishedNs = now;
+        sendInputs();
+        attachPlanner();
+        simulation.setActive(true);
+    }
+
+    // Takes the world back on the FX thread, e.g. to pause, set up, apply events or leave the
+    // scene, and shuts the AI thread down until the match runs again
+    private void stopSimulation() {
+        if (simulation != null) {
+            simulation.setActive(false);
+            shown = world;
+            if (isGameOver) {
+                simulation.shutdown();
+                simulation = null;
+                sentInput1 = sentInput2 = Direction.NONE; // a new loop starts from NONE
+            }
+        }
+        if (planner != null) {
+            world.planner = null;
+            planner.shutdown();
+            planner = null;
         }
     }
 
+    // Queues input changes for the simulation thread; retried on the next pulse if the ring is full
+    private void sendInputs() {
+        if (simulation == null) return;
+        if (currentInput != sentInput1 && simulation.sendInput(0, currentInput)) sentInput1 = currentInput;
+        if (currentInput2 != sentInput2 && simulation.sendInput(1, currentInput2)) sentInput2 = currentInput2;
+    }
+
     private void update() {
         // Don't update if game is frozen (player died, waiting for death sound)
         if (isGameFrozen) {
             return;
         }
-        
-        globalTicks++;
-        // Only host calculates game mode - client receives it from network
-        if (!networkClientMode) {
-            updateGlobalMode();
+
+        if (networkClientMode) {
+            // Host is authoritative and client receives STATE updates instead of simulating locally
+            updateClient();
+        } else {
+            currentTick++;
+            int events = world.step(currentInput, currentInput2);
+            updateMovementSounds();
+            if (!handleTickEvents(events)) {
+                return; // Don't continue game updates
+            }
+        }
+        finishIfGameOver();
+    }
+
+    // Reacts to the events of a tick; false once the win screen is up
+    private boolean handleTickEvents(int events) {
+        if ((events & (GameWorld.EVENT_P1_CAUGHT | GameWorld.EVENT_P2_CAUGHT)) != 0) {
+            // player caught - freeze game and play death sound
+            handlePlayerDeath();
+        }
+        if ((events & GameWorld.EVENT_ALL_COLLECTED) != 0 && !isGameOver) {
+            // Win condition met - show win screen
+            showWinScreen();
+            return false;
+        }
+        // If both players are dead, mark game over
+        if ((events & GameWorld.EVENT_ALL_DOWN) != 0) {
+            isGameOver = true;
+        }
+        return true;
+    }
+
+    private void finishIfGameOver() {
+        if (isGameOver && !isGameFrozen) {
+            // save score and return to menu
+            String gameMode = (localTwoPlayer || hostMode || networkClientMode) ? "DUO" : "SOLO";
+            String difficulty = currentDifficulty.toString();
+            ScoreManager.addScore(world.score, difficulty, gameMode);
+            // switch back to menu scene on FX thread
+            javafx.application.Platform.runLater(() -> {
+                stopSimulation(); // this controller is done: release its threads
+                try {
+                    FXMLLoader loader = new FXMLLoader(getClass().getResource("menu.fxml"));
+                    Parent root = loader.load();
+                    MenuController mc = loader.getController();
+                    if (primaryStage != null) {
+                        mc.setPrimaryStage(primaryStage);
+                        mc.setLastScore(world.score);
+                        mc.refreshScoresDisplay();
+                        Scene scene = new Scene(root);
+                        scene.setOnKeyPressed(e -> mc.handleKey(e));
+                        primaryStage.setScene(scene);
+                        primaryStage.show();
+                        root.requestFocus();
+                    }
+                } catch (Exception e) { e.printStackTrace(); }
+            });
         }
+    }
+    
+
+    private void updateClient() {
+        Entity pacman = world.pacman;
+        Entity pacman2 = world.pacman2;
 
         // Client-side reconciliation: smoothly correct predicted position when server state differs
-        if (networkClientMode && enableClientPrediction && needsReconciliation && pacman2 != null) {
+        if (enableClientPrediction && needsReconciliation && pacman2 != null) {
             if (serverPacketX >= 0 && predictedX >= 0) {
                 // Check if prediction diverged from server authoritative position
                 if (serverPacketX != predictedX || serverPacketY != predictedY) {
@@ -1113,7 +1017,7 @@ public class GameController {
         }
 
         // Client-side interpolation: smoothly move displayed pixels toward last received targets
-        if (networkClientMode && remoteStateReceived) {
+        if (remoteStateReceived) {
             long nowNs = System.nanoTime();
             double t = 1.0;
             if (interpStartNs > 0) {
@@ -1130,20 +1034,30 @@ public class GameController {
                 }
             } catch (Exception ignored) {}
         }
-        // If client mode, host is authoritative and client receives STATE updates instead of simulating locally
-        boolean player1Moving = false;
-        if (!networkClientMode && player1Alive) {
-            pacman.move(currentInput, MAP);
-            // Check if player is actually moving
-            player1Moving = (currentInput != null && !currentInput.isEmpty()) || 
-                           (pacman.pixelX != pacman.gridX * TILE_SIZE || pacman.pixelY != pacman.gridY * TILE_SIZE);
+
+        // Move prediction locally while waiting for server correction
+        world.stepClient(currentInput2, enableClientPrediction);
+        if (enableClientPrediction && pacman2 != null && world.player2Alive) {
+            // Store predicted position for reconciliation
+            predictedX = pacman2.gridX;
+            predictedY = pacman2.gridY;
         }
-        if (pacman.ateDot) {
-            score += 10;
-            dotsEatenP1++;
-            pacman.ateDot = false;
+        updateMovementSounds();
+
+        // If both players are dead, mark game over
+        if (world.allPlayersDown()) {
+            isGameOver = true;
         }
-        
+    }
+
+    private void updateMovementSounds() {
+        Entity pacman = shown.pacman;
+        Entity pacman2 = shown.pacman2;
+        // Host and local players move from their inputs; the client only predicts player 2
+        boolean player1Moving = !networkClientMode && shown.player1Alive && isMoving(pacman, currentInput);
+        boolean player2Moving = pacman2 != null && shown.player2Alive
+                && (!networkClientMode || enableClientPrediction) && isMoving(pacman2, currentInput2);
+
         // Play wakawaka sound when player moves
         if (player1Moving && !wasMoving) {
             if (wakawakaPlayer != null) {
@@ -1156,34 +1070,7 @@ public class GameController {
             }
             wasMoving = false;
         }
-        // Move pacman2 in multiplayer mode (localTwoPlayer, hostMode, or networkClientMode)
-        boolean player2Moving = false;
-        if ((localTwoPlayer || hostMode || networkClientMode) && pacman2 != null) {
-            // On host, pacman2 moves from inputs (including remote inputs applied to currentInput2)
-            if (player2Alive && !networkClientMode) {
-                pacman2.move(currentInput2, MAP);
-                // Check if player 2 is actually moving
-                player2Moving = (currentInput2 != null && !currentInput2.isEmpty()) || 
-                               (pacman2.pixelX != pacman2.gridX * TILE_SIZE || pacman2.pixelY != pacman2.gridY * TILE_SIZE);
-            }
-            // On client: move prediction locally while waiting for server correction
-            if (networkClientMode && enableClientPrediction && player2Alive) {
-                pacman2.move(currentInput2, MAP);
-                // Store predicted position for reconciliation
-                predictedX = pacman2.gridX;
-                predictedY = pacman2.gridY;
-                // Check if player 2 is actually moving
-                player2Moving = (currentInput2 != null && !currentInput2.isEmpty()) || 
-                               (pacman2.pixelX != pacman2.gridX * TILE_SIZE || pacman2.pixelY != pacman2.gridY * TILE_SIZE);
-            }
 
-            if (pacman2.ateDot) {
-                score2 += (int)(10 * pointMultiplier);
-                dotsEatenP2++;
-                pacman2.ateDot = false;
-            }
-        }
-        
         // Play wakawaka sound when player 2 moves
         if (player2Moving && !wasMoving2) {
             if (wakawakaPlayer2 != null) {
@@ -1196,245 +1083,13 @@ public class GameController {
             }
             wasMoving2 = false;
         }
+    }
 
-
-        if (powerModeTicks > 0) {
-            powerModeTicks--;
-            currentMode = GhostMode.FRIGHTENED;
-        }
-
-        int activeCount = (powerPelletsEaten >= 2) ? 4 : (powerPelletsEaten >= 1) ? 3 : 2;
-        Ghost blinky = allGhosts.get(0);
-
-        for (int i = 0; i < activeCount; i++) {
-            Ghost g = allGhosts.get(i);
-            // Weighted targeting: Each ghost uses personality-based logic in multiplayer
-            Entity primary = pacman;
-            boolean useMultiplayer = (pacman2 != null && player2Alive && player1Alive);
-            
-            if (useMultiplayer) {
-                // Use personality-based targeting for each ghost
-                g.setTargetMultiplayer(pacman, pacman2, blinky, dotsEatenP1, dotsEatenP2);
-            } else {
-                // Single player or only one alive - use standard targeting
-                if (pacman2 != null && player2Alive && !player1Alive) {
-                    primary = pacman2;
-                }
-                g.setTarget(primary, blinky);
-            }
-            
-            // Only host runs ghost AI - client receives authoritative ghost positions
-            if (!networkClientMode) {
-                // Update behavior with appropriate target
-                if (useMultiplayer && currentMode == GameController.GhostMode.FRIGHTENED) {
-                    // Frightened mode: flee from center of mass of both players
-                    int centerX = (pacman.gridX + pacman2.gridX) / 2;
-                    int centerY = (pacman.gridY + pacman2.gridY) / 2;
-                    // Flee in opposite direction from center of mass
-                    int dx = g.gridX - centerX;
-                    int dy = g.gridY - centerY;
-                    // Normalize and extend
-                    double dist = Math.hypot(dx, dy);
-                    if (dist > 0.1) {
-                        g.targetX = g.gridX + (int)(dx / dist * 10);
-                        g.targetY = g.gridY + (int)(dy / dist * 10);
-                        // Clamp to map bounds
-                        if (g.targetX < 0) g.targetX = 0;
-                        if (g.targetX >= MAP[0].length) g.targetX = MAP[0].length - 1;
-                        if (g.targetY < 0) g.targetY = 0;
-                        if (g.targetY >= MAP.length) g.targetY = MAP.length - 1;
-                    } else {
-                        // Random if too close
-                        g.targetX = (int)(Math.random() * 28);
-                        g.targetY = (int)(Math.random() * 22);
-                    }
-                }
-                g.updateBehavior(MAP, primary, blinky, currentMode);
-                
-                // Collisions: only host processes collisions (authoritative)
-                if (player1Alive) {
-                    double dist1 = Math.hypot(pacman.pixelX - g.pixelX, pacman.pixelY - g.pixelY);
-                    if (dist1 < TILE_SIZE * 0.7) {
-                        if (currentMode == GhostMode.FRIGHTENED) {
-                            if (!g.isEaten()) { g.setEaten(true); score += (int)(200 * pointMultiplier); }
-                        } else {
-                            // player1 caught - freeze game and play death sound
-                            player1Alive = false;
-                            handlePlayerDeath();
-                        }
-                    }
-                }
-                if (pacman2 != null && player2Alive) {
-                    double dist2 = Math.hypot(pacman2.pixelX - g.pixelX, pacman2.pixelY - g.pixelY);
-                    if (dist2 < TILE_SIZE * 0.7) {
-                        if (currentMode == GhostMode.FRIGHTENED) {
-                            if (!g.isEaten()) { g.setEaten(true); score2 += (int)(200 * pointMultiplier); }
-                        } else {
-                            // player2 caught - freeze game and play death sound
-                            player2Alive = false;
-                            handlePlayerDeath();
-                        }
-                    }
-                }
-            }
-            // Client: collisions are handled by host and synchronized via network state
-        }
-
-        // Check win condition: all collectibles collected (only host checks)
-        if (!networkClientMode) {
-            boolean allCollected = true;
-            for (int r = 0; r < MAP.length; r++) {
-                for (int c = 0; c < MAP[r].length; c++) {
-                    int val = MAP[r][c];
-                    // Check for dots (2), power pellets (3), fruits (9-15), or keys (16)
-                    if (val == 2 || val == 3 || (val >= 9 && val <= 16)) {
-                        allCollected = false;
-                        break;
-                    }
-                }
-                if (!allCollected) break;
-            }
-            if (allCollected && !isGameOver) {
-                // Win condition met - show win screen
-                showWinScreen();
-                return; // Don't continue game updates
-            }
-        }
-
-        // If both players are dead, mark game over
-        if (!player1Alive && (pacman2 == null || !player2Alive)) {
-            isGameOver = true;
-        }
-
-        // Power pellet collection: only host processes (authoritative)
-        if (!networkClientMode) {
-            // Player 1 power pellet collection
-            if (player1Alive && MAP[pacman.gridY][pacman.gridX] == 3) {
-                MAP[pacman.gridY][pacman.gridX] = 0;
-                powerModeTicks = 720; // 12 seconds @ 60fps
-                powerPelletsEaten++;
-                score += (int)(50 * pointMultiplier);
-            }
-            // Player 2 power pellet collection
-            if (pacman2 != null && player2Alive && MAP[pacman2.gridY][pacman2.gridX] == 3) {
-                MAP[pacman2.gridY][pacman2.gridX] = 0;
-                powerModeTicks = 720; // 12 seconds @ 60fps
-                powerPelletsEaten++;
-                score2 += (int)(50 * pointMultiplier);
-            }
-            
-            // Rare transformation: dots to fruits or key (only host processes)
-            transformationTicks++;
-            if (transformationTicks >= TRANSFORMATION_INTERVAL) {
-                transformationTicks = 0;
-                // Find all dots and randomly transform one
-                List<int[]> dotPositions = new ArrayList<>();
-                for (int r = 0; r < MAP.length; r++) {
-                    for (int c = 0; c < MAP[r].length; c++) {
-                        if (MAP[r][c] == 2) { // dot
-                            dotPositions.add(new int[]{r, c});
-                        }
-                    }
-                }
-                if (!dotPositions.isEmpty() && Math.random() < FRUIT_TRANSFORMATION_CHANCE) {
-                    int[] pos = dotPositions.get((int)(Math.random() * dotPositions.size()));
-                    // Transform to random fruit (9-15, values 9-15 represent fruits, 8 is always free)
-                    int fruitType = 9 + (int)(Math.random() * 7); // 9-15
-                    MAP[pos[0]][pos[1]] = fruitType;
-                }
-                // Key transformation (only in multiplayer, only one per game)
-                if ((localTwoPlayer || hostMode) && !keySpawned && !dotPositions.isEmpty() && Math.random() < KEY_TRANSFORMATION_CHANCE) {
-                    int[] pos = dotPositions.get((int)(Math.random() * dotPositions.size()));
-                    MAP[pos[0]][pos[1]] = 16; // 16 = key
-                    keySpawned = true;
-                }
-            }
-            
-            // Bonus fruit collection (values 9-15)
-            if (player1Alive) {
-                int val = MAP[pacman.gridY][pacman.gridX];
-                if (val >= 9 && val <= 15) {
-                    MAP[pacman.gridY][pacman.gridX] = 0;
-                    int bonusPoints = (val - 8) * 100; // 100, 200, 300, 400, 500, 600, 700 points
-                    score += (int)(bonusPoints * pointMultiplier);
-                }
-            }
-            if (pacman2 != null && player2Alive) {
-                int val = MAP[pacman2.gridY][pacman2.gridX];
-                if (val >= 9 && val <= 15) {
-                    MAP[pacman2.gridY][pacman2.gridX] = 0;
-                    int bonusPoints = (val - 8) * 100;
-                    score2 += (int)(bonusPoints * pointMultiplier);
-                }
-            }
-            
-            // Key collection (value 16)
-            if (player1Alive && MAP[pacman.gridY][pacman.gridX] == 16) {
-                MAP[pacman.gridY][pacman.gridX] = 0;
-                player1HasKey = true;
-                score += (int)(1000 * pointMultiplier);
-            }
-            if (pacman2 != null && player2Alive && MAP[pacman2.gridY][pacman2.gridX] == 16) {
-                MAP[pacman2.gridY][pacman2.gridX] = 0;
-                player2HasKey = true;
-                score2 += (int)(1000 * pointMultiplier);
-            }
-            
-            // Key-based rescue mechanic: if player has key and passes within 8 tiles of caught player
-            if ((localTwoPlayer || hostMode) && pacman2 != null) {
-                if (player1HasKey && !player2Alive) {
-                    double dist = Math.hypot(pacman.gridX - pacman2.gridX, pacman.gridY - pacman2.gridY);
-                    if (dist <= 8) {
-                        player2Alive = true;
-                        player1HasKey = false;
-                        // Respawn player2 at safe location
-                        pacman2.gridX = pacman.gridX;
-                        pacman2.gridY = pacman.gridY;
-                        pacman2.pixelX = pacman2.gridX * TILE_SIZE;
-                        pacman2.pixelY = pacman2.gridY * TILE_SIZE;
-                    }
-                }
-                if (player2HasKey && !player1Alive) {
-                    double dist = Math.hypot(pacman2.gridX - pacman.gridX, pacman2.gridY - pacman.gridY);
-                    if (dist <= 8) {
-                        player1Alive = true;
-                        player2HasKey = false;
-                        // Respawn player1 at safe location
-                        pacman.gridX = pacman2.gridX;
-                        pacman.gridY = pacman2.gridY;
-                        pacman.pixelX = pacman.gridX * TILE_SIZE;
-                        pacman.pixelY = pacman.gridY * TILE_SIZE;
-                    }
-                }
-            }
-        }
-
-        if (isGameOver && !isGameFrozen) {
-            // save score and return to menu
-            String gameMode = (localTwoPlayer || hostMode || networkClientMode) ? "DUO" : "SOLO";
-            String difficulty = currentDifficulty.toString();
-            ScoreManager.addScore(score, difficulty, gameMode);
-            // switch back to menu scene on FX thread
-            javafx.application.Platform.runLater(() -> {
-                try {
-                    FXMLLoader loader = new FXMLLoader(getClass().getResource("menu.fxml"));
-                    Parent root = loader.load();
-                    MenuController mc = loader.getController();
-                    if (primaryStage != null) {
-                        mc.setPrimaryStage(primaryStage);
-                        mc.setLastScore(score);
-                        mc.refreshScoresDisplay();
-                        Scene scene = new Scene(root);
-                        scene.setOnKeyPressed(e -> mc.handleKey(e));
-                        primaryStage.setScene(scene);
-                        primaryStage.show();
-                        root.requestFocus();
-                    }
-                } catch (Exception e) { e.printStackTrace(); }
-            });
-        }
+    private boolean isMoving(Entity e, byte input) {
+        return input != Direction.NONE ||
+               (e.pixelX != e.gridX * TILE_SIZE || e.pixelY != e.gridY * TILE_SIZE);
     }
-    
+
     private void handlePlayerDeath() {
         // Stop wakawaka sounds for both players
         if (wakawakaPlayer != null) {
@@ -1458,7 +1113,7 @@ public class GameController {
             deathPlayer.setOnEndOfMedia(() -> {
                 isGameFrozen = false;
                 // Check if both players are dead
-                if (!player1Alive && (pacman2 == null || !player2Alive)) {
+                if (!world.player1Alive && (world.pacman2 == null || !world.player2Alive)) {
                     isGameOver = true;
                 }
             });
@@ -1467,7 +1122,7 @@ public class GameController {
             javafx.animation.PauseTransition delay = new javafx.animation.PauseTransition(javafx.util.Duration.seconds(1));
             delay.setOnFinished(e -> {
                 isGameFrozen = false;
-                if (!player1Alive && (pacman2 == null || !player2Alive)) {
+                if (!world.player1Alive && (world.pacman2 == null || !world.player2Alive)) {
                     isGameOver = true;
                 }
             });
@@ -1479,9 +1134,9 @@ public class GameController {
         // Save score and show win screen
         String gameMode = (localTwoPlayer || hostMode || networkClientMode) ? "DUO" : "SOLO";
         String difficulty = currentDifficulty.toString();
-        ScoreManager.addScore(score, difficulty, gameMode);
-        if (pacman2 != null && score2 > 0) {
-            ScoreManager.addScore(score2, difficulty, gameMode);
+        ScoreManager.addScore(world.score, difficulty, gameMode);
+        if (world.pacman2 != null && world.score2 > 0) {
+            ScoreManager.addScore(world.score2, difficulty, gameMode);
         }
         isGameOver = true;
         gameState = GameState.PAUSED;
@@ -1490,13 +1145,14 @@ public class GameController {
         javafx.animation.PauseTransition delay = new javafx.animation.PauseTransition(javafx.util.Duration.seconds(3));
         delay.setOnFinished(e -> {
             javafx.application.Platform.runLater(() -> {
+                stopSimulation(); // this controller is done: release its threads
                 try {
                     FXMLLoader loader = new FXMLLoader(getClass().getResource("menu.fxml"));
                     Parent root = loader.load();
                     MenuController mc = loader.getController();
                     if (primaryStage != null) {
                         mc.setPrimaryStage(primaryStage);
-                        mc.setLastScore(Math.max(score, score2));
+                        mc.setLastScore(Math.max(world.score, world.score2));
                         mc.refreshScoresDisplay();
                         Scene scene = new Scene(root);
                         scene.setOnKeyPressed(ev -> mc.handleKey(ev));
@@ -1510,196 +1166,206 @@ public class GameController {
         javafx.application.Platform.runLater(() -> delay.play());
     }
 
-    private void updateGlobalMode() {
-        if (powerModeTicks > 0) return;
-
-        double seconds = globalTicks / 60.0;
-        double totalCycle = scatterDuration + chaseDuration;
-        double cycleTime = seconds % totalCycle;
-        currentMode = (cycleTime < scatterDuration) ? GhostMode.SCATTER : GhostMode.CHASE;
-    }
-
-    private void render() {
-        gc.setFill(Color.web("#000033"));
-        gc.fillRect(0, 0, gameCanvas.getWidth(), gameCanvas.getHeight());
-
-        for (int r = 0; r < MAP.length; r++) {
-            for (int c = 0; c < MAP[r].length; c++) {
+    // Background, walls and gate lines on the maze layer; only when the maze or the canvas changed
+    private void renderMaze() {
+        TileMap map = shown.map;
+        if (map == mazeDrawnFor && map.structureVersion() == mazeDrawnVersion) return;
+        mazeDrawnFor = map;
+        mazeDrawnVersion = map.structureVersion();
+        GraphicsContext mgc = mazeCanvas.getGraphicsContext2D();
+        int calls = 1;
+        mgc.setFill(BACKGROUND);
+        mgc.fillRect(0, 0, mazeCanvas.getWidth(), mazeCanvas.getHeight());
+        mgc.setFill(Color.BLUE);
+        mgc.setStroke(Color.PINK);
+        for (int r = 0; r < map.height; r++) {
+            for (int c = 0; c < map.width; c++) {
                 double x = c * TILE_SIZE; double y = r * TILE_SIZE;
-                if (MAP[r][c] == 1) {
-                    gc.setFill(Color.BLUE);
-                    gc.fillRoundRect(x+2, y+2, TILE_SIZE-4, TILE_SIZE-4, 10, 10);
-                } else if (MAP[r][c] == 2) {
-                    gc.setFill(Color.web("#ffb8ae"));
-                    gc.fillOval(x + 11, y + 11, 4, 4);
-                } else if (MAP[r][c] == 3) {
-                    gc.setFill(Color.WHITE);
-                    gc.fillOval(x + 7, y + 7, 11, 11);
-                } else if (MAP[r][c] >= 9 && MAP[r][c] <= 15) {
-                    // Bonus fruits (9-15)
-                    int fruitIndex = MAP[r][c] - 9;
-                    if (fruitIndex < bonusFruitImages.length && bonusFruitImages[fruitIndex] != null) {
-                        gc.drawImage(bonusFruitImages[fruitIndex], x + 2, y + 2, TILE_SIZE - 4, TILE_SIZE - 4);
-                    } else {
-                        // Fallback: draw colored circle
-                        gc.setFill(Color.ORANGE);
-                        gc.fillOval(x + 5, y + 5, TILE_SIZE - 10, TILE_SIZE - 10);
-                    }
-                } else if (MAP[r][c] == 16) {
-                    // Key
-                    if (keyImage != null) {
-                        gc.drawImage(keyImage, x + 2, y + 2, TILE_SIZE - 4, TILE_SIZE - 4);
-                    } else {
-                        // Fallback: draw yellow key shape
-                        gc.setFill(Color.YELLOW);
-                        gc.fillRect(x + 8, y + 5, 4, 15);
-                        gc.fillOval(x + 5, y + 18, 10, 4);
-                    }
-                } else if (MAP[r][c] == 5) {
-                    gc.setStroke(Color.PINK);
-                    gc.strokeLine(x, y + TILE_SIZE/2, x + TILE_SIZE, y + TILE_SIZE/2);
+                int tile = map.get(c, r);
+                if (tile == 1) {
+                    mgc.fillRoundRect(x+2, y+2, TILE_SIZE-4, TILE_SIZE-4, 10, 10);
+                    calls++;
+                } else if (tile == 5) {
+                    mgc.strokeLine(x, y + TILE_SIZE/2, x + TILE_SIZE, y + TILE_SIZE/2);
+                    calls++;
                 }
             }
         }
+        frameStats.mazeDrawCalls = calls;
+        frameStats.mazeBuilds++;
+        frameStats.drawCalls += calls;
+    }
 
-        // Draw Pac-Man using sprite frames (only if alive)
-        if (player1Alive) {
-            Image pacImg = null;
-            boolean usingInv = (currentMode == GhostMode.FRIGHTENED && pacOpenInv != null);
-            int pacFrame;
-            boolean pacMoving = !(pacman.pixelX == pacman.gridX * TILE_SIZE && pacman.pixelY == pacman.gridY * TILE_SIZE) || (currentInput != null && !currentInput.isEmpty());
-            if (!pacMoving) {
-                pacFrame = 1; // steady half-open mouth when not moving
-            } else {
-                pacFrame = (globalTicks / 18) % 3; // original/slower animation while moving
+    // Collectible layer: only tiles the map reports as set since the last frame, everything after
+    // a map switch, copy or resize
+    private void renderCollectibles() {
+        TileMap map = shown.map;
+        boolean partial = map.drainChanged(redrawCollectible);
+        if (!partial || map != collectDrawnFor) {
+            collectDrawnFor = map;
+            collectCanvas.getGraphicsContext2D().clearRect(0, 0, collectCanvas.getWidth(), collectCanvas.getHeight());
+            frameStats.drawCalls++;
+            for (int i = 0; i < map.width * map.height; i++) {
+                if (isCollectible(map.get(i))) drawCollectible(i);
             }
-            if (usingInv && pacOpenInv != null && pacHalfInv != null && pacClosedInv != null) {
-                pacImg = (pacFrame == 0) ? pacOpenInv : (pacFrame == 1) ? pacHalfInv : pacClosedInv;
-            } else if (pacOpen != null && pacHalf != null && pacClosed != null) {
-                pacImg = (pacFrame == 0) ? pacOpen : (pacFrame == 1) ? pacHalf : pacClosed;
+        }
+    }
+
+    // Repaints one tile of the collectible layer
+    private void drawCollectible(int index) {
+        GraphicsContext cgc = collectCanvas.getGraphicsContext2D();
+        int tile = shown.map.get(index);
+        double x = (index % shown.map.width) * TILE_SIZE; double y = (index / shown.map.width) * TILE_SIZE;
+        cgc.clearRect(x, y, TILE_SIZE, TILE_SIZE);
+        frameStats.drawCalls++;
+        if (tile == 2) {
+            cgc.setFill(DOT_COLOR);
+            cgc.fillOval(x + 11, y + 11, 4, 4);
+        } else if (tile == 3) {
+            cgc.setFill(Color.WHITE);
+            cgc.fillOval(x + 7, y + 7, 11, 11);
+        } else if (tile >= 9 && tile <= 15) {
+            // Bonus fruits (9-15)
+            if (!sprites.draw(cgc, SpriteAtlas.fruit(tile - 9), x + 2, y + 2)) {
+                // Fallback: draw colored circle
+                cgc.setFill(Color.ORANGE);
+                cgc.fillOval(x + 5, y + 5, TILE_SIZE - 10, TILE_SIZE - 10);
             }
-            if (pacImg != null) {
-                double w = TILE_SIZE - 4, h = TILE_SIZE - 4;
-                double centerX = pacman.pixelX + 2 + w/2;
-                double centerY = pacman.pixelY + 2 + h/2;
-                double angle = 0;
-                if (pacman.lastDir != null) {
-                    if (pacman.lastDir.equals("UP")) angle = -90;
-                    else if (pacman.lastDir.equals("DOWN")) angle = 90;
-                    else if (pacman.lastDir.equals("LEFT")) angle = 180;
-                    else angle = 0; // RIGHT or default
-                }
-                gc.save();
-                gc.translate(centerX, centerY);
-                gc.rotate(angle);
-                gc.drawImage(pacImg, -w/2, -h/2, w, h);
-                gc.restore();
-            } else {
-                gc.setFill(pacman.color);
-                gc.fillOval(pacman.pixelX+2, pacman.pixelY+2, TILE_SIZE-4, TILE_SIZE-4);
+        } else if (tile == 16) {
+            // Key
+            if (!sprites.draw(cgc, SpriteAtlas.KEY, x + 2, y + 2)) {
+                // Fallback: draw yellow key shape
+                cgc.setFill(Color.YELLOW);
+                cgc.fillRect(x + 8, y + 5, 4, 15);
+                cgc.fillOval(x + 5, y + 18, 10, 4);
             }
+        } else {
+            return;
+        }
+        frameStats.drawCalls++;
+    }
+
+    private static boolean isCollectible(int tile) {
+        return tile == TileMap.DOT || tile == TileMap.PELLET || (tile >= 9 && tile <= TileMap.KEY);
+    }
+
+    // A sprite over the tile whose top-left corner is at canvas position (x, y), on the game canvas or
+    // into the low-res frame; false if the sprite is missing
+    private boolean drawSprite(int slot, double x, double y) {
+        if (lowRes != null) return lowRes.sprite(slot, x, y);
+        return sprites.draw(gc, slot, x + 2, y + 2);
+    }
+
+    // Shape drawn instead of a missing sprite
+    private void drawFallback(Color color, double x, double y, boolean round) {
+        if (lowRes != null) {
+            lowRes.block(argb(color), x, y);
+        } else {
+            gc.setFill(color);
+            if (round) gc.fillOval(x+2, y+2, TILE_SIZE-4, TILE_SIZE-4);
+            else gc.fillRoundRect(x+2, y+2, TILE_SIZE-4, TILE_SIZE-4, 15, 15);
+        }
+    }
+
+    private static int argb(Color c) {
+        return (int) Math.round(c.getOpacity() * 255) << 24 | (int) Math.round(c.getRed() * 255) << 16
+                | (int) Math.round(c.getGreen() * 255) << 8 | (int) Math.round(c.getBlue() * 255);
+    }
+
+    private void render() {
+        frameStats.begin();
+        if (lowRes != null) {
+            lowRes.begin(shown.map);
+        } else {
+            renderMaze();
+            renderCollectibles();
         }
+        gc.clearRect(0, 0, gameCanvas.getWidth(), gameCanvas.getHeight());
+        frameStats.drawCalls++;
 
+        // Players from the sprite atlas, pre-rotated to face their heading (only if alive)
+        if (shown.player1Alive) drawPlayer(0, shown.pacman, currentInput, Color.YELLOW);
         // draw second player (Pacwoman) if in multiplayer mode (local or online) and alive
-        if ((localTwoPlayer || hostMode || networkClientMode) && pacman2 != null && player2Alive) {
-            Image p2img = null;
-            boolean usingInv2 = (currentMode == GhostMode.FRIGHTENED && pacwomanOpenInv != null);
-            int p2Frame;
-            boolean p2Moving = !(pacman2.pixelX == pacman2.gridX * TILE_SIZE && pacman2.pixelY == pacman2.gridY * TILE_SIZE) || (currentInput2 != null && !currentInput2.isEmpty());
-            if (!p2Moving) {
-                p2Frame = 1; // steady half-open mouth when not moving
-            } else {
-                p2Frame = (globalTicks / 18) % 3; // animation while moving
-            }
-            if (usingInv2 && pacwomanOpenInv != null && pacwomanHalfInv != null && pacwomanClosedInv != null) {
-                p2img = (p2Frame == 0) ? pacwomanOpenInv : (p2Frame == 1) ? pacwomanHalfInv : pacwomanClosedInv;
-            } else if (pacwomanOpen != null && pacwomanHalf != null && pacwomanClosed != null) {
-                p2img = (p2Frame == 0) ? pacwomanOpen : (p2Frame == 1) ? pacwomanHalf : pacwomanClosed;
-            }
-            if (p2img != null) {
-                double w2 = TILE_SIZE - 4, h2 = TILE_SIZE - 4;
-                double centerX2 = pacman2.pixelX + 2 + w2/2;
-                double centerY2 = pacman2.pixelY + 2 + h2/2;
-                double angle2 = 0;
-                if (pacman2.lastDir != null) {
-                    if (pacman2.lastDir.equals("UP")) angle2 = -90;
-                    else if (pacman2.lastDir.equals("DOWN")) angle2 = 90;
-                    else if (pacman2.lastDir.equals("LEFT")) angle2 = 180;
-                    else angle2 = 0;
-                }
-                gc.save(); gc.translate(centerX2, centerY2); gc.rotate(angle2);
-                gc.drawImage(p2img, -w2/2, -h2/2, w2, h2);
-                gc.restore();
-            } else {
-                gc.setFill(pacman2.color);
-                gc.fillOval(pacman2.pixelX+2, pacman2.pixelY+2, TILE_SIZE-4, TILE_SIZE-4);
-            }
+        if ((localTwoPlayer || hostMode || networkClientMode) && shown.pacman2 != null && shown.player2Alive) {
+            drawPlayer(1, shown.pacman2, currentInput2, Color.LIME);
         }
 
-        int activeCount = (powerPelletsEaten >= 2) ? 4 : (powerPelletsEaten >= 1) ? 3 : 2;
+        int activeCount = (shown.powerPelletsEaten >= 2) ? 4 : (shown.powerPelletsEaten >= 1) ? 3 : 2;
+        int ghostFrame = (shown.globalTicks / 18) % 2; // first or second frame of the pair
+        boolean frightened = shown.currentMode == GhostMode.FRIGHTENED;
         for (int i = 0; i < activeCount; i++) {
-            Ghost g = allGhosts.get(i);
-            Image[] frames = null;
-            // Use hurt sprite when ghost is in jail
-            if (g.inJail && hurtFrames != null) {
-                frames = hurtFrames;
-            } else if (currentMode == GhostMode.FRIGHTENED && afraidFrames != null) frames = afraidFrames;
-            else if (g.color.equals(Color.RED) && redGhostFrames != null) frames = redGhostFrames;
-            else if (g.color.equals(Color.PINK) && pinkGhostFrames != null) frames = pinkGhostFrames;
-            else if (g.color.equals(Color.CYAN) && blueGhostFrames != null) frames = blueGhostFrames;
-            else if (g.color.equals(Color.ORANGE) && orangeGhostFrames != null) frames = orangeGhostFrames;
-
-            if (frames != null && frames.length >= 8) {
-                // Frame pairs mapping: 1-2 = right (0-1), 3-4 = left (2-3), 5-6 = up (4-5), 7-8 = down (6-7)
-                // For hurt frames (2 frames), just animate between them
-                if (g.inJail && frames.length == 2) {
-                    int gi = (globalTicks / 18) % 2;
-                    Image gImg = frames[gi];
-                    gc.drawImage(gImg, g.pixelX+2, g.pixelY+2, TILE_SIZE-4, TILE_SIZE-4);
-                } else {
-                    int dirStart = 0;
-                    String d = g.lastDir != null ? g.lastDir : "RIGHT";
-                    switch (d) {
-                        case "LEFT" -> dirStart = 2;
-                        case "UP" -> dirStart = 4;
-                        case "DOWN" -> dirStart = 6;
-                        default -> dirStart = 0; // RIGHT
-                    }
-                    int pairIndex = (globalTicks / 18) % 2; // choose first or second of the pair
-                    int gi = (dirStart + pairIndex) % frames.length;
-                    Image gImg = frames[gi];
-                    gc.drawImage(gImg, g.pixelX+2, g.pixelY+2, TILE_SIZE-4, TILE_SIZE-4);
-                }
-            } else if (frames != null && frames.length > 0) {
-                int gi = (globalTicks / 18) % frames.length; // fallback
-                Image gImg = frames[gi];
-                gc.drawImage(gImg, g.pixelX+2, g.pixelY+2, TILE_SIZE-4, TILE_SIZE-4);
-            } else {
-                gc.setFill(currentMode == GhostMode.FRIGHTENED ? Color.BLUEVIOLET : g.color);
-                gc.fillRoundRect(g.pixelX+2, g.pixelY+2, TILE_SIZE-4, TILE_SIZE-4, 15, 15);
+            Ghost g = shown.allGhosts.get(i);
+            byte kind = personality(g);
+            // Hurt sprite when the ghost is in jail
+            int slot = g.inJail ? SpriteAtlas.hurt(ghostFrame)
+                    : frightened ? SpriteAtlas.afraid(ghostFrame) : SpriteAtlas.ghost(kind, g.lastDir, ghostFrame);
+            if (!drawSprite(slot, drawX(g), drawY(g))) {
+                drawFallback(frightened ? Color.BLUEVIOLET : SWARM_COLORS[kind], drawX(g), drawY(g), false);
             }
+            if (lowRes == null) frameStats.drawCalls++;
+        }
+
+        // Swarm ghosts: same sprites by personality, no path overlay
+        GhostStore swarm = shown.swarm;
+        for (int i = 0; i < swarm.size; i++) {
+            double gx = interpolate(swarm.prevPixelX[i], swarm.pixelX[i]);
+            double gy = interpolate(swarm.prevPixelY[i], swarm.pixelY[i]);
+            int slot = (swarm.state[i] & GhostStore.IN_JAIL) != 0 ? SpriteAtlas.hurt(ghostFrame)
+                    : frightened ? SpriteAtlas.afraid(ghostFrame) : SpriteAtlas.ghost(swarm.personality[i], swarm.dir[i], ghostFrame);
+            if (!drawSprite(slot, gx, gy)) {
+                drawFallback(frightened ? Color.BLUEVIOLET : SWARM_COLORS[swarm.personality[i]], gx, gy, false);
+            }
+        }
+        if (lowRes != null) {
+            // The whole frame so far, in one scaled blit
+            lowRes.present(gc, gameCanvas.getWidth(), gameCanvas.getHeight());
+            frameStats.drawCalls++;
+        } else {
+            frameStats.drawCalls += swarm.size;
         }
 
         // Draw visualization: Manhattan/A* path from ghost to its current target
         gc.setLineWidth(2);
         gc.setStroke(Color.rgb(255,0,0,160/255.0));
-        for (int i = 0; i < activeCount; i++) {
-            Ghost g = allGhosts.get(i);
+        for (int i = 0; showGhostPaths && i < activeCount; i++) {
+            Ghost g = shown.allGhosts.get(i);
             try {
-                List<int[]> path = findPath(g.gridX, g.gridY, g.targetX, g.targetY, MAP, g.isEaten());
+                List<int[]> path = pathCache.get(shown.map, g.gridX, g.gridY, g.targetX, g.targetY, g.isEaten());
+                if (path == null) {
+                    path = findPath(g.gridX, g.gridY, g.targetX, g.targetY, shown.map, g.isEaten());
+                    pathCache.put(shown.map, g.gridX, g.gridY, g.targetX, g.targetY, g.isEaten(), path);
+                }
                 if (path != null && path.size() > 1) {
                     for (int k = 0; k < path.size() - 1; k++) {
                         int[] a = path.get(k);
                         int[] b = path.get(k+1);
+                        if (Math.abs(a[0] - b[0]) > 1) continue; // tunnel wrap
                         double ax = a[0] * TILE_SIZE + TILE_SIZE/2.0;
                         double ay = a[1] * TILE_SIZE + TILE_SIZE/2.0;
                         double bx = b[0] * TILE_SIZE + TILE_SIZE/2.0;
                         double by = b[1] * TILE_SIZE + TILE_SIZE/2.0;
                         gc.strokeLine(ax, ay, bx, by);
+                        frameStats.drawCalls++;
                     }
                 }
             } catch (Exception ignored) {}
         }
+        if (showFrameStats) {
+            gc.setFill(Color.WHITE);
+            gc.fillText(String.format("%d draw calls  %.2f ms  (maze layer: %d calls, %d builds)  %d idle pulses skipped",
+                    frameStats.lastDrawCalls, frameStats.lastFrameNanos / 1e6, frameStats.mazeDrawCalls, frameStats.mazeBuilds,
+                    frameStats.skipped), 8, 16);
+            gc.fillText(String.format("Sprite atlas: %d sprites loaded in %.1f ms", frameStats.atlasSprites,
+                    frameStats.atlasLoadNanos / 1e6), 8, 32);
+            double line = 48;
+            if (world.planner != null) {
+                gc.fillText(String.format("AI thread %.2f ms", world.planner.lastPlanNanos / 1e6), 8, line);
+                line += 16;
+            }
+            if (simulation != null) {
+                gc.fillText(String.format("Simulation thread: %d ticks, %d dropped", simulation.ticks, simulation.dropped), 8, line);
+            }
+        }
 
         // Update bottom bar
         updateBottomBar();
@@ -1723,17 +1389,7 @@ public class GameController {
 
         if (isGameOver) {
             // Check if it's a win (all collectibles collected) or game over
-            boolean allCollected = true;
-            for (int r = 0; r < MAP.length; r++) {
-                for (int c = 0; c < MAP[r].length; c++) {
-                    int val = MAP[r][c];
-                    if (val == 2 || val == 3 || (val >= 9 && val <= 16)) {
-                        allCollected = false;
-                        break;
-                    }
-                }
-                if (!allCollected) break;
-            }
+            boolean allCollected = shown.allCollected();
             
             if (allCollected) {
                 // Win screen
@@ -1753,19 +1409,58 @@ public class GameController {
                 gc.fillText("GAME OVER", gameCanvas.getWidth() / 2 - 140, gameCanvas.getHeight() / 2);
             }
         }
+        frameStats.end();
+    }
+
+    // Interpolated draw position between the previous and the current tick. Network clients already
+    // smooth positions received from the host, and jumps (tunnel, respawn, rescue) are not blended.
+    private double drawX(Entity e) {
+        return interpolate(e.prevPixelX, e.pixelX);
+    }
+
+    private double drawY(Entity e) {
+        return interpolate(e.prevPixelY, e.pixelY);
+    }
+
+    private double interpolate(double prev, double cur) {
+        if (networkClientMode || Math.abs(cur - prev) > TILE_SIZE) return cur;
+        return prev + (cur - prev) * renderAlpha;
+    }
+
+    // Pac-Man (player 0) or Pacwoman (player 1); invulnerable sprites while the ghosts are frightened
+    private void drawPlayer(int player, Entity p, byte input, Color fallback) {
+        boolean moving = !(p.pixelX == p.gridX * TILE_SIZE && p.pixelY == p.gridY * TILE_SIZE) || input != Direction.NONE;
+        // steady half-open mouth when not moving, the slower original animation while moving
+        int frame = moving ? (shown.globalTicks / 18) % 3 : 1;
+        // Sprites are pre-rotated in the atlas, one per heading
+        int slot = SpriteAtlas.player(player, shown.currentMode == GhostMode.FRIGHTENED, frame, p.lastDir);
+        if (!sprites.has(slot)) slot = SpriteAtlas.player(player, false, frame, p.lastDir);
+        if (!drawSprite(slot, drawX(p), drawY(p))) drawFallback(fallback, drawX(p), drawY(p), true);
+        if (lowRes == null) frameStats.drawCalls++;
+    }
+
+    private static byte personality(Ghost g) {
+        if (g instanceof Blinky) return GhostStore.BLINKY;
+        if (g instanceof Pinky) return GhostStore.PINKY;
+        if (g instanceof Inky) return GhostStore.INKY;
+        return GhostStore.CLYDE;
     }
 
     public void handleKey(KeyEvent event) {
+        redrawRequested = true;
         String key = event.getCode().toString();
         switch (key) {
             case "ENTER" -> {
                 if (gameState == GameState.MENU) {
+                    // Every match gets a fresh seed; the client simulates with the same one
+                    world.setSeed(MatchRandom.newSeed());
                     // If host in multiplayer, send start command to client
                     if (hostMode && networkManager != null) {
-                        networkManager.sendToClient("GAMESTART");
+                        String start = "GAMESTART:" + world.seed;
+                        networkManager.sendToClient(start);
                         UdpNetworkManager udpHost = networkManager.getUdpHost();
                         if (udpHost != null) {
-                            udpHost.sendSnapshot("GAMESTART");
+                            udpHost.sendSnapshot(start);
                         }
                     }
                     gameState = GameState.RUNNING;
@@ -1776,8 +1471,16 @@ public class GameController {
                 if (gameState == GameState.RUNNING) gameState = GameState.PAUSED;
                 else if (gameState == GameState.PAUSED) gameState = GameState.RUNNING;
             }
+            case "F3" -> {
+                showGhostPaths = !showGhostPaths;
+                if (!showGhostPaths) pathCache.clear();
+            }
+            case "F4" -> showFrameStats = !showFrameStats;
             case "ESCAPE" -> System.exit(0);
-            case "M" -> gameState = GameState.MENU;
+            case "M" -> {
+                stopSimulation();
+                gameState = GameState.MENU;
+            }
             default -> {
                 if (gameState == GameState.RUNNING) {
                     if (networkClientMode && enableClientPrediction) {
@@ -1786,19 +1489,19 @@ public class GameController {
                         switch (key) {
                             case "W" -> {
                                 inputMsg = "INPUT:UP:" + currentTick;
-                                currentInput2 = "UP";
+                                currentInput2 = Direction.UP;
                             }
                             case "S" -> {
                                 inputMsg = "INPUT:DOWN:" + currentTick;
-                                currentInput2 = "DOWN";
+                                currentInput2 = Direction.DOWN;
                             }
                             case "A" -> {
                                 inputMsg = "INPUT:LEFT:" + currentTick;
-                                currentInput2 = "LEFT";
+                                currentInput2 = Direction.LEFT;
                             }
                             case "D" -> {
                                 inputMsg = "INPUT:RIGHT:" + currentTick;
-                                currentInput2 = "RIGHT";
+                                currentInput2 = Direction.RIGHT;
                             }
                             case "UP", "DOWN", "LEFT", "RIGHT" -> {
                                 // Client ignores arrow keys (host controls player1)
@@ -1816,65 +1519,61 @@ public class GameController {
                     } else if (hostMode) {
                         // Host mode: host controls player1 with arrow keys, player2 via network
                         switch (key) {
-                            case "UP", "DOWN", "LEFT", "RIGHT" -> currentInput = key;
-                            case "W" -> currentInput2 = "UP";
-                            case "S" -> currentInput2 = "DOWN";
-                            case "A" -> currentInput2 = "LEFT";
-                            case "D" -> currentInput2 = "RIGHT";
+                            case "UP", "DOWN", "LEFT", "RIGHT" -> currentInput = Direction.parse(key);
+                            case "W" -> currentInput2 = Direction.UP;
+                            case "S" -> currentInput2 = Direction.DOWN;
+                            case "A" -> currentInput2 = Direction.LEFT;
+                            case "D" -> currentInput2 = Direction.RIGHT;
                             default -> {}
                         }
                     } else {
                         // Local mode: both players on same machine
                         switch (key) {
-                            case "UP", "DOWN", "LEFT", "RIGHT" -> currentInput = key;
-                            case "W" -> currentInput2 = "UP";
-                            case "S" -> currentInput2 = "DOWN";
-                            case "A" -> currentInput2 = "LEFT";
-                            case "D" -> currentInput2 = "RIGHT";
+                            case "UP", "DOWN", "LEFT", "RIGHT" -> currentInput = Direction.parse(key);
+                            case "W" -> currentInput2 = Direction.UP;
+                            case "S" -> currentInput2 = Direction.DOWN;
+                            case "A" -> currentInput2 = Direction.LEFT;
+                            case "D" -> currentInput2 = Direction.RIGHT;
                             default -> {}
                         }
                     }
                 }
             }
         }
+        sendInputs();
     }
 
-    // A* pathfinding on grid (4-way). Returns list of {x,y} from start to goal (inclusive).
-    private List<int[]> findPath(int sx, int sy, int gx, int gy, int[][] map, boolean allowGate) {
-        List<int[]> empty = new ArrayList<>();
-        int rows = map.length, cols = map[0].length;
-        if (sx < 0 || sy < 0 || gx < 0 || gy < 0 || sy >= rows || sx >= cols || gy >= rows || gx >= cols) return empty;
-
-        class Node { int x,y; int g,f; Node p; Node(int x,int y,int g,int f,Node p){this.x=x;this.y=y;this.g=g;this.f=f;this.p=p;} }
-
-        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingInt(n->n.f));
-        boolean[][] closed = new boolean[rows][cols];
-        open.add(new Node(sx, sy, 0, Math.abs(sx-gx)+Math.abs(sy-gy), null));
-
-        while (!open.isEmpty()) {
-            Node cur = open.poll();
-            if (closed[cur.y][cur.x]) continue;
-            closed[cur.y][cur.x] = true;
-            if (cur.x == gx && cur.y == gy) {
-                // reconstruct
-                List<int[]> path = new ArrayList<>();
-                Node n = cur;
-                while (n != null) { path.add(0, new int[]{n.x, n.y}); n = n.p; }
-                return path;
+    // Shortest path on the grid (4-way): read off the world's distance table when it knows both
+    // ends, the path hierarchy on mazes too large for a table (gates closed), the reusable A*
+    // otherwise. Returns list of {x,y} from start to goal (inclusive).
+    private List<int[]> findPath(int sx, int sy, int gx, int gy, TileMap map, boolean allowGate) {
+        int cols = map.width;
+        DistanceTable table = shown.distances;
+        if (table != null && table.width == cols && table.distance(sx, sy, gx, gy, allowGate) >= 0) {
+            List<int[]> path = new ArrayList<>();
+            path.add(new int[]{sx, sy});
+            int tile = table.nextTile(sx, sy, gx, gy, allowGate);
+            while (tile >= 0) {
+                int x = tile % cols, y = tile / cols;
+                path.add(new int[]{x, y});
+                tile = table.nextTile(x, y, gx, gy, allowGate);
             }
+            return path;
+        }
 
-            int[][] dirs = {{0,-1},{0,1},{-1,0},{1,0}};
-            for (int[] d : dirs) {
-                int nx = cur.x + d[0], ny = cur.y + d[1];
-                if (nx < 0 || ny < 0 || ny >= rows || nx >= cols) continue;
-                if (map[ny][nx] == 1) continue; // wall
-                if (!allowGate && (map[ny][nx] == 4 || map[ny][nx] == 5)) continue; // gate blocked
-                if (closed[ny][nx]) continue;
-                int ng = cur.g + 1;
-                int h = Math.abs(nx - gx) + Math.abs(ny - gy);
-                open.add(new Node(nx, ny, ng, ng + h, cur));
-            }
+        HierarchicalPathfinder paths = shown.paths;
+        boolean hierarchical = paths != null && !allowGate && map == shown.map;
+        int length = hierarchical ? paths.findPath(sx, sy, gx, gy, pathTiles)
+                : pathfinder.findPath(map, sx, sy, gx, gy, allowGate, pathTiles);
+        if (length > pathTiles.length) {
+            pathTiles = new int[length];
+            if (hierarchical) paths.findPath(sx, sy, gx, gy, pathTiles);
+            else pathfinder.findPath(map, sx, sy, gx, gy, allowGate, pathTiles);
+        }
+        List<int[]> path = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            path.add(new int[]{pathTiles[i] % cols, pathTiles[i] / cols});
         }
-        return empty; // no path
+        return path;
     }
 }
\ No newline at end of file
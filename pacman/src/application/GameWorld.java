@@ -0,0 +1,927 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Headless game simulation: owns the maze, both Pac-Man entities and the ghosts and advances
+ * every game rule one tick at a time. It has no JavaFX dependency, so a match can run without
+ * a Stage, Canvas or AnimationTimer (dedicated hosts, soak tests, bots).
+ * GameController drives it with player inputs and renders the result.
+ */
+class GameWorld {
+
+    static final int TILE_SIZE = 25;
+
+    // Events reported by step() so the controller can react (sounds, screens)
+    static final int EVENT_P1_CAUGHT = 1;
+    static final int EVENT_P2_CAUGHT = 1 << 1;
+    static final int EVENT_ALL_COLLECTED = 1 << 2;
+    static final int EVENT_ALL_DOWN = 1 << 3;
+
+    private static final int TRANSFORMATION_INTERVAL = 1800; // ~30 seconds at 60fps
+    private static final double FRUIT_TRANSFORMATION_CHANCE = 0.15; // 15% chance
+    private static final double KEY_TRANSFORMATION_CHANCE = 0.05; // 5% chance (only in multiplayer)
+
+    // Snapshot layout: bump the version whenever a field is added, removed or reordered
+    static final int SNAPSHOT_MAGIC = 0x504d5753; // "PMWS"
+    static final int SNAPSHOT_VERSION = 2;
+    // Cached because values() clones its array on every call
+    private static final GameController.Difficulty[] DIFFICULTIES = GameController.Difficulty.values();
+    private static final GameController.GhostMode[] GHOST_MODES = GameController.GhostMode.values();
+    // Internal flag in resolveContact's result: the ghost was eaten
+    private static final int CONTACT_GHOST_EATEN = 1 << 30;
+
+    // Easy/Normal map (simpler)
+    static final int[][] MAP_EASY = {
+            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1},
+            {1,3,2,2,2,2,2,2,2,2,2,2,2,1,1,2,2,2,2,2,2,2,2,2,2,2,3,1},
+            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
+            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
+            {7,2,2,2,2,2,2,2,2,2,2,2,0,0,2,2,2,2,2,2,2,2,2,2,2,2,2,7}, // Tunnel Row
+            {1,1,1,1,2,1,1,1,2,1,1,4,5,5,4,1,1,2,1,1,1,2,1,1,1,1,1,1},
+            {1,1,1,1,2,1,1,1,2,1,4,4,4,4,4,4,1,2,1,1,1,2,1,1,1,1,1,1},
+            {1,2,2,2,2,2,2,2,2,1,1,1,1,1,1,1,1,2,2,2,2,2,2,2,2,2,2,1},
+            {1,2,1,1,1,1,2,1,2,2,2,2,2,2,2,2,2,2,2,1,2,1,1,1,1,1,2,1},
+            {1,2,1,1,1,1,2,1,1,1,2,1,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1},
+            {1,3,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,3,1},
+            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}
+    };
+
+    // Hard/Insane map (original complex map)
+    static final int[][] MAP_HARD = {
+            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1},
+            {1,2,2,2,2,2,2,2,2,2,2,2,2,1,1,2,2,2,2,2,2,2,2,2,2,2,2,1},
+            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
+            {1,3,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,3,1},
+            {1,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,1},
+            {1,2,1,1,1,1,2,1,1,2,1,1,1,1,1,1,1,1,2,1,1,2,1,1,1,1,2,1},
+            {1,2,2,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,2,2,1},
+            {1,1,1,1,1,1,2,1,1,1,1,1,0,1,1,0,1,1,1,1,1,2,1,1,1,1,1,1},
+            {0,0,0,0,0,1,2,1,1,0,0,0,0,0,0,0,0,0,0,1,1,2,1,0,0,0,0,0},
+            {1,1,1,1,1,1,2,1,1,0,1,1,4,5,5,4,1,1,0,1,1,2,1,1,1,1,1,1},
+            {7,0,0,0,0,0,2,0,0,0,1,4,4,4,4,4,4,1,0,0,0,2,0,0,0,0,0,7},
+            {1,1,1,1,1,1,2,1,1,0,1,4,4,4,4,4,4,1,0,1,1,2,1,1,1,1,1,1},
+            {0,0,0,0,0,1,2,1,1,0,1,1,1,1,1,1,1,1,0,1,1,2,1,0,0,0,0,0},
+            {1,1,1,1,1,1,2,1,1,0,2,2,2,2,2,2,2,2,0,1,1,2,1,1,1,1,1,1},
+            {1,2,2,2,2,2,2,2,2,2,1,1,1,2,1,1,1,2,2,2,2,2,2,2,2,2,2,1},
+            {1,2,1,1,1,1,2,1,1,1,1,1,2,1,1,2,1,1,1,1,1,2,1,1,1,1,2,1},
+            {1,3,2,2,1,1,2,2,2,2,2,2,2,0,0,2,2,2,2,2,2,2,1,1,2,2,3,1},
+            {1,1,1,2,1,1,2,1,1,2,1,1,1,1,1,1,1,1,2,1,1,2,1,1,2,1,1,1},
+            {1,2,2,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,1,1,2,2,2,2,2,2,1},
+            {1,2,1,1,1,1,1,1,1,1,1,1,2,1,1,2,1,1,1,1,1,1,1,1,1,1,2,1},
+            {1,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,2,1},
+            {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}
+    };
+
+    // Pristine maps, copied into the current map at the start of a match
+    private static final TileMap TILES_EASY = TileMap.of(MAP_EASY);
+    private static final TileMap TILES_HARD = TileMap.of(MAP_HARD);
+    private static final JunctionGraph JUNCTIONS_EASY = new JunctionGraph(TILES_EASY);
+    private static final JunctionGraph JUNCTIONS_HARD = new JunctionGraph(TILES_HARD);
+
+    // Current map (switched based on difficulty) - initialized in setup
+    TileMap map;
+    // Remaining dots/pellets/fruits/keys; the map reports every write to it
+    final CollectibleIndex collectibles = new CollectibleIndex();
+    // Walking distances for the current maze, shared with the ghosts; null if the maze is too large
+    DistanceTable distances;
+    // Junctions and exit masks of the current maze, so ghosts only decide where there's a choice
+    JunctionGraph junctions;
+    // Optional Monte Carlo brain for the classic ghosts (INSANE); null uses their own targeting
+    GhostLookahead lookahead;
+    // Optional AI thread deciding ghost moves a tick ahead; null decides them in step()
+    GhostPlanner planner;
+    // Swarm decisions handed over by the planner for the coming tick, else null
+    GhostStore swarmPlan;
+    // Hierarchical paths for mazes too large for a distance table, else null
+    HierarchicalPathfinder paths;
+    // Way to each player (0 = pacman, 1 = pacman2) from every tile, rebuilt when they change tile;
+    // only kept up for mazes too large for a distance table
+    final FlowField[] flowFields = {new FlowField(), new FlowField()};
+    // Seeded per match so host, client and replays draw the same numbers
+    final MatchRandom random = new MatchRandom(0);
+    long seed = 0;
+    // Tiles named in the last host collectible list (replaceCollectibles scratch, one bit per tile)
+    private long[] hostCollectibles = new long[0];
+    // Player/ghost contacts; players are inserted by index (0 = pacman, 1 = pacman2)
+    private final CollisionGrid collisions = new CollisionGrid(TILE_SIZE, TILE_SIZE * 0.7);
+
+    Entity pacman;
+    Entity pacman2;
+    final List<Ghost> allGhosts = new ArrayList<>();
+    // Swarm mode: extra ghosts kept in structure-of-arrays form, cycling through the four personalities
+    final GhostStore swarm = new GhostStore();
+    int swarmSize = 0;
+
+    GameController.Difficulty difficulty = GameController.Difficulty.EASY;
+    GameController.GhostMode currentMode = GameController.GhostMode.SCATTER;
+
+    // Difficulty parameters
+    double entitySpeed = 0.75;
+    double scatterDuration = 10.0; // seconds
+    double chaseDuration = 10.0; // seconds
+    double pointMultiplier = 0.8;
+
+    // Match state
+    int globalTicks = 0;
+    int powerModeTicks = 0;
+    int powerPelletsEaten = 0;
+    int score = 0;
+    int score2 = 0;
+    boolean player1Alive = true;
+    boolean player2Alive = true;
+    // Track dots eaten for weighted targeting
+    int dotsEatenP1 = 0;
+    int dotsEatenP2 = 0;
+
+    // Key and fruit state
+    boolean keysEnabled = false; // keys and rescue only exist in local/host multiplayer
+    boolean player1HasKey = false;
+    boolean player2HasKey = false;
+    boolean keySpawned = false;
+    int transformationTicks = 0; // Counter for transformation timing
+
+    /**
+     * (Re)builds the maze, players and ghosts for a new match.
+     *
+     * @param twoPlayers  whether a second Pac-Man takes part (local, host or client multiplayer)
+     * @param keysEnabled whether keys can spawn and rescue a caught teammate (local or host multiplayer)
+     */
+    void setup(GameController.Difficulty difficulty, boolean twoPlayers, boolean keysEnabled) {
+        if (planner != null) planner.discard();
+        this.difficulty = difficulty;
+        this.keysEnabled = keysEnabled;
+        random.setState(seed);
+        loadMap(difficulty);
+
+        // Determine spawn positions based on difficulty
+        int mapHeight = map.height;
+        int mapWidth = map.width;
+
+        // Spawn positions determined by difficulty level
+        int pacmanSpawnX, pacmanSpawnY, pacman2SpawnX, pacman2SpawnY;
+        int ghostSpawnX, ghostSpawnY;
+
+        switch (difficulty) {
+            case EASY:
+                // Easy map: Bottom middle for pacman, ghosts inside jail
+                pacmanSpawnX = 14;
+                pacmanSpawnY = 10; // Bottom middle area
+                pacman2SpawnX = 13;
+                pacman2SpawnY = 10;
+                ghostSpawnX = 13;  // Center of jail area
+                ghostSpawnY = 6;   // Inside jail (row 6 has jail tiles 4)
+                break;
+            case NORMAL:
+                // Normal map: Standard spawn positions
+                pacmanSpawnX = 14;
+                pacmanSpawnY = 10; // Row 16 is a clear path in MAP_HARD
+                pacman2SpawnX = 13;
+                pacman2SpawnY = 10;
+                ghostSpawnX = 13;  // Center of jail area
+                ghostSpawnY = 10;  // Inside jail
+                break;
+            case HARD:
+                // Hard mode: spawn Pac-Man at y=14 for increased challenge
+                pacmanSpawnX = 14;
+                pacmanSpawnY = 16; // Hard mode: Pac-Man starts at row 14
+                pacman2SpawnX = 13;
+                pacman2SpawnY = 16;
+                ghostSpawnX = 13;  // Center of jail area
+                ghostSpawnY = 11;  // Place ghosts deeper inside jail for Hard mode
+                break;
+            case INSANE:
+                // Insane mode: deepest starting position for maximum challenge
+                pacmanSpawnX = 14;
+                pacmanSpawnY = 16; // 3 blocks down from row 16
+                pacman2SpawnX = 13;
+                pacman2SpawnY = 16;
+                ghostSpawnX = 13;  // Center of jail area
+                ghostSpawnY = 10;  // Inside jail
+                break;
+            default:
+                // Fallback to normal
+                pacmanSpawnX = 14;
+                pacmanSpawnY = 16;
+                pacman2SpawnX = 13;
+                pacman2SpawnY = 16;
+                ghostSpawnX = 13;
+                ghostSpawnY = 10;
+                break;
+        }
+
+        // Clamp spawn positions to map bounds
+        pacmanSpawnX = Math.max(0, Math.min(pacmanSpawnX, mapWidth - 1));
+        pacmanSpawnY = Math.max(0, Math.min(pacmanSpawnY, mapHeight - 1));
+        pacman2SpawnX = Math.max(0, Math.min(pacman2SpawnX, mapWidth - 1));
+        pacman2SpawnY = Math.max(0, Math.min(pacman2SpawnY, mapHeight - 1));
+        ghostSpawnX = Math.max(0, Math.min(ghostSpawnX, mapWidth - 1));
+        ghostSpawnY = Math.max(0, Math.min(ghostSpawnY, mapHeight - 1));
+
+        pacman = new Entity(pacmanSpawnX, pacmanSpawnY, false);
+        pacman.speed = entitySpeed;
+        if (twoPlayers) {
+            pacman2 = new Entity(pacman2SpawnX, pacman2SpawnY, false);
+            pacman2.speed = entitySpeed;
+        } else {
+            pacman2 = null;
+        }
+        player1Alive = true; player2Alive = (pacman2 != null);
+        // Set ghost speeds and spawn positions
+        // Jail exit: Easy map door at row 4, Hard map door at row 9 (exit path at row 8)
+        int ghostJailExitX = ghostSpawnX;
+        int ghostJailExitY = (mapHeight == 12) ? 4 : 8; // Easy map: row 4, Hard map: row 8
+
+        // Find valid spawn positions in jail area (tiles 4 or 5, or empty space 0)
+        List<int[]> validJailPositions = new ArrayList<>();
+        for (int r = Math.max(0, ghostSpawnY - 2); r < Math.min(map.height, ghostSpawnY + 3); r++) {
+            for (int c = Math.max(0, ghostSpawnX - 2); c < Math.min(map.width, ghostSpawnX + 3); c++) {
+                int val = map.get(c, r);
+                // Valid jail positions: empty (0), jail floor (4), or jail gate (5)
+                if (val == 0 || val == 4 || val == 5) {
+                    validJailPositions.add(new int[]{c, r});
+                }
+            }
+        }
+
+        // If no valid positions found, use default spawn positions
+        if (validJailPositions.isEmpty()) {
+            validJailPositions.add(new int[]{ghostSpawnX, ghostSpawnY});
+            validJailPositions.add(new int[]{ghostSpawnX + 1, ghostSpawnY});
+            validJailPositions.add(new int[]{ghostSpawnX - 1, ghostSpawnY});
+            validJailPositions.add(new int[]{ghostSpawnX + 2, ghostSpawnY});
+        }
+
+        allGhosts.clear();
+        // Assign spawn positions to ghosts, ensuring they're in valid jail positions
+        int[] blinkyPos = validJailPositions.get(0 % validJailPositions.size());
+        Ghost blinky = new Blinky(blinkyPos[0], blinkyPos[1]);
+        blinky.speed = entitySpeed;
+        blinky.setSpawnPositions(blinkyPos[0], blinkyPos[1], ghostJailExitX, ghostJailExitY);
+        allGhosts.add(blinky);
+
+        int[] pinkyPos = validJailPositions.get(1 % validJailPositions.size());
+        Ghost pinky = new Pinky(pinkyPos[0], pinkyPos[1]);
+        pinky.speed = entitySpeed;
+        pinky.setSpawnPositions(pinkyPos[0], pinkyPos[1], ghostJailExitX, ghostJailExitY);
+        allGhosts.add(pinky);
+
+        int[] inkyPos = validJailPositions.get(2 % validJailPositions.size());
+        Ghost inky = new Inky(inkyPos[0], inkyPos[1]);
+        inky.speed = entitySpeed;
+        inky.setSpawnPositions(inkyPos[0], inkyPos[1], ghostJailExitX, ghostJailExitY);
+        allGhosts.add(inky);
+
+        int[] clydePos = validJailPositions.get(3 % validJailPositions.size());
+        Ghost clyde = new Clyde(clydePos[0], clydePos[1]);
+        clyde.speed = entitySpeed;
+        clyde.setSpawnPositions(clydePos[0], clydePos[1], ghostJailExitX, ghostJailExitY);
+        allGhosts.add(clyde);
+
+        // Set jail times based on difficulty
+        int jailTicks = getJailTicksForDifficulty(difficulty);
+        for (Ghost g : allGhosts) {
+            g.setJailTime(jailTicks);
+            g.distances = distances;
+            g.flowFields = flowFields;
+            g.junctions = junctions;
+            g.paths = paths;
+        }
+
+        swarm.clear();
+        swarm.speed = (float) entitySpeed;
+        for (int i = 0; i < swarmSize; i++) {
+            byte kind = (byte) (i % 4);
+            int[] pos = validJailPositions.get((4 + i) % validJailPositions.size());
+            // Scatter corners follow the classic ghosts: Blinky top-right, Pinky top-left, Inky bottom-right, Clyde bottom-left
+            int cornerX = (kind == GhostStore.BLINKY || kind == GhostStore.INKY) ? mapWidth - 1 : 0;
+            int cornerY = (kind == GhostStore.INKY || kind == GhostStore.CLYDE) ? mapHeight - 1 : 0;
+            swarm.add(kind, pos[0], pos[1], cornerX, cornerY, jailTicks);
+        }
+        score = 0;
+        score2 = 0;
+        dotsEatenP1 = 0;
+        dotsEatenP2 = 0;
+        player1HasKey = false;
+        player2HasKey = false;
+        keySpawned = false;
+        transformationTicks = 0;
+    }
+
+    /** Applies the speed, mode timings and scoring of a difficulty and loads its map. */
+    void setDifficulty(GameController.Difficulty diff) {
+        this.difficulty = diff;
+        // Set difficulty-specific parameters
+        switch (diff) {
+            case EASY:
+                entitySpeed = 0.75;
+                scatterDuration = 10.0;
+                chaseDuration = 10.0;
+                pointMultiplier = 0.8;
+                break;
+            case NORMAL:
+                entitySpeed = 0.75;
+                scatterDuration = 8.0;
+                chaseDuration = 12.0;
+                pointMultiplier = 1.0;
+                break;
+            case HARD:
+                entitySpeed = 0.9;
+                scatterDuration = 7.0;
+                chaseDuration = 15.0;
+                pointMultiplier = 1.2;
+                break;
+            case INSANE:
+                entitySpeed = 1.05;
+                scatterDuration = 6.0;
+                chaseDuration = 20.0;
+                pointMultiplier = 1.5;
+                break;
+        }
+        loadMap(diff);
+        // Apply speed to entities
+        setEntitySpeed(entitySpeed);
+        // Update jail times for all ghosts
+        int jailTicks = getJailTicksForDifficulty(diff);
+        for (Ghost g : allGhosts) {
+            g.setJailTime(jailTicks);
+        }
+        for (int i = 0; i < swarm.size; i++) {
+            swarm.jailTicks[i] = jailTicks;
+        }
+    }
+
+    /** Starts the match RNG from the given seed; setup() rewinds to it, so a restart replays the same draws. */
+    void setSeed(long seed) {
+        this.seed = seed;
+        random.setState(seed);
+    }
+
+    void setEntitySpeed(double s) {
+        entitySpeed = s;
+        if (pacman != null) pacman.speed = s;
+        if (pacman2 != null) pacman2.speed = s;
+        for (Ghost g : allGhosts) {
+            g.speed = s;
+        }
+        swarm.speed = (float) s;
+    }
+
+    static TileMap mapFor(GameController.Difficulty diff) {
+        return (diff == GameController.Difficulty.EASY || diff == GameController.Difficulty.NORMAL) ? TILES_EASY : TILES_HARD;
+    }
+
+    // Copies the pristine map for the difficulty into the current one, reusing it when the size matches
+    private void loadMap(GameController.Difficulty diff) {
+        TileMap source = mapFor(diff);
+        if (map != null && map.width == source.width && map.height == source.height) {
+            map.copyFrom(source);
+        } else {
+            map = source.copy();
+            map.setCollectibleIndex(collectibles);
+            collisions.resize(map.width, map.height);
+        }
+        collectibles.rebuild(map);
+        distances = DistanceTable.forMap(map);
+        junctions = source == TILES_EASY ? JUNCTIONS_EASY : JUNCTIONS_HARD;
+        paths = distances == null ? new HierarchicalPathfinder(map) : null;
+        for (Ghost g : allGhosts) {
+            g.distances = distances;
+            g.junctions = junctions;
+            g.paths = paths;
+        }
+        swarm.distances = distances;
+        swarm.junctions = junctions;
+        swarm.flowFields = flowFields;
+        for (FlowField f : flowFields) {
+            f.invalidate();
+        }
+    }
+
+    static int getJailTicksForDifficulty(GameController.Difficulty diff) {
+        switch (diff) {
+            case EASY: return 600;   // 10 seconds (600 ticks @ 60fps)
+            case NORMAL: return 480; // 8 seconds (480 ticks @ 60fps)
+            case HARD: return 360;   // 6 seconds (360 ticks @ 60fps)
+            case INSANE: return 240; // 4 seconds (240 ticks @ 60fps)
+            default: return 600;
+        }
+    }
+
+    /** Number of ghosts released so far: two at start, one more per power pellet eaten. */
+    int activeGhostCount() {
+        return (powerPelletsEaten >= 2) ? 4 : (powerPelletsEaten >= 1) ? 3 : 2;
+    }
+
+    /**
+     * Advances the authoritative simulation by one tick (single player, local multiplayer and host).
+     *
+     * @param input1 desired Direction of player 1, or Direction.NONE
+     * @param input2 desired direction of player 2, ignored without a second player
+     * @return a bitmask of EVENT_* flags raised during this tick
+     */
+    int step(byte input1, byte input2) {
+        if (planner != null) planner.merge(this);
+        int events = advance(input1, input2);
+        if (planner != null) planner.submit(this);
+        return events;
+    }
+
+    private int advance(byte input1, byte input2) {
+        if (lookahead != null) lookahead.plan(this, input1, input2);
+        int events = 0;
+        globalTicks++;
+        updateGlobalMode();
+        savePreviousPositions();
+
+        if (player1Alive) {
+            pacman.move(input1, map);
+        }
+        if (pacman.ateDot) {
+            score += 10;
+            dotsEatenP1++;
+            pacman.ateDot = false;
+        }
+        if (pacman2 != null) {
+            if (player2Alive) {
+                pacman2.move(input2, map);
+            }
+            if (pacman2.ateDot) {
+                score2 += (int)(10 * pointMultiplier);
+                dotsEatenP2++;
+                pacman2.ateDot = false;
+            }
+        }
+
+        if (powerModeTicks > 0) {
+            powerModeTicks--;
+            currentMode = GameController.GhostMode.FRIGHTENED;
+        }
+
+        refreshFlowFields();
+        int activeCount = activeGhostCount();
+        Ghost blinky = allGhosts.get(0);
+
+        // Swarm ghosts aim Inky's vector from where Blinky stood at the start of the tick
+        int blinkyX = blinky.gridX, blinkyY = blinky.gridY;
+
+        // Players don't move during the ghost loop, so bucket them once
+        collisions.clear();
+        if (player1Alive) collisions.insert(0, pacman.pixelX, pacman.pixelY);
+        if (pacman2 != null && player2Alive) collisions.insert(1, pacman2.pixelX, pacman2.pixelY);
+
+        for (int i = 0; i < activeCount; i++) {
+            Ghost g = allGhosts.get(i);
+            // A decision planned on the AI thread already carries its target
+            Entity primary = g.plannedDir != Direction.NONE ? chasedPlayer() : aimGhost(g, blinky);
+            g.updateBehavior(map, primary, blinky, currentMode, random);
+
+            // Collisions, checked right after this ghost moves so later ghosts see who is still alive
+            int contacts = collisions.query(g.pixelX, g.pixelY);
+            for (int c = 0; c < contacts; c++) {
+                int result = resolveContact(g.isEaten(), collisions.contact(c));
+                if ((result & CONTACT_GHOST_EATEN) != 0) g.setEaten(true);
+                events |= result & ~CONTACT_GHOST_EATEN;
+            }
+        }
+        if (lookahead != null || planner != null) {
+            // Picks for decisions that didn't happen after all (e.g. the mode changed) expire
+            for (int i = 0; i < allGhosts.size(); i++) {
+                Ghost g = allGhosts.get(i);
+                g.forcedDir = Direction.NONE;
+                g.plannedDir = Direction.NONE;
+            }
+        }
+
+        if (swarm.size > 0) {
+            // Batch update (or the moves planned on the AI thread), then collisions in index order
+            if (swarmPlan != null) swarm.applyPlanned(swarmPlan, map, random);
+            else swarm.update(map, chasedPlayer(), blinkyX, blinkyY, currentMode, random);
+            swarmPlan = null;
+            for (int i = 0; i < swarm.size; i++) {
+                int contacts = collisions.query(swarm.pixelX[i], swarm.pixelY[i]);
+                for (int c = 0; c < contacts; c++) {
+                    int result = resolveContact(swarm.isEaten(i), collisions.contact(c));
+                    if ((result & CONTACT_GHOST_EATEN) != 0) swarm.setEaten(i);
+                    events |= result & ~CONTACT_GHOST_EATEN;
+                }
+            }
+        }
+
+        // Check win condition: all collectibles collected
+        if (allCollected()) {
+            return events | EVENT_ALL_COLLECTED; // Don't continue game updates
+        }
+
+        if (!player1Alive && (pacman2 == null || !player2Alive)) {
+            events |= EVENT_ALL_DOWN;
+        }
+
+        // Player 1 power pellet collection
+        if (player1Alive && map.get(pacman.gridX, pacman.gridY) == 3) {
+            clearTile(pacman.gridX, pacman.gridY);
+            powerModeTicks = 720; // 12 seconds @ 60fps
+            powerPelletsEaten++;
+            score += (int)(50 * pointMultiplier);
+        }
+        // Player 2 power pellet collection
+        if (pacman2 != null && player2Alive && map.get(pacman2.gridX, pacman2.gridY) == 3) {
+            clearTile(pacman2.gridX, pacman2.gridY);
+            powerModeTicks = 720; // 12 seconds @ 60fps
+            powerPelletsEaten++;
+            score2 += (int)(50 * pointMultiplier);
+        }
+
+        // Rare transformation: dots to fruits or key
+        transformationTicks++;
+        if (transformationTicks >= TRANSFORMATION_INTERVAL) {
+            transformationTicks = 0;
+            // Randomly transform one of the remaining dots
+            if (collectibles.dotCount() > 0 && random.nextDouble() < FRUIT_TRANSFORMATION_CHANCE) {
+                int tile = map.nthDot(random.nextInt(map.dotCount()));
+                // Transform to random fruit (9-15, values 9-15 represent fruits, 8 is always free)
+                int fruitType = 9 + random.nextInt(7); // 9-15
+                setTile(tile % map.width, tile / map.width, fruitType);
+            }
+            // Key transformation (only in multiplayer, only one per game)
+            if (keysEnabled && !keySpawned && collectibles.dotCount() > 0 && random.nextDouble() < KEY_TRANSFORMATION_CHANCE) {
+                int tile = map.nthDot(random.nextInt(map.dotCount()));
+                setTile(tile % map.width, tile / map.width, 16); // 16 = key
+                keySpawned = true;
+            }
+        }
+
+        // Bonus fruit collection (values 9-15)
+        if (player1Alive) {
+            int val = map.get(pacman.gridX, pacman.gridY);
+            if (val >= 9 && val <= 15) {
+                clearTile(pacman.gridX, pacman.gridY);
+                int bonusPoints = (val - 8) * 100; // 100, 200, 300, 400, 500, 600, 700 points
+                score += (int)(bonusPoints * pointMultiplier);
+            }
+        }
+        if (pacman2 != null && player2Alive) {
+            int val = map.get(pacman2.gridX, pacman2.gridY);
+            if (val >= 9 && val <= 15) {
+                clearTile(pacman2.gridX, pacman2.gridY);
+                int bonusPoints = (val - 8) * 100;
+                score2 += (int)(bonusPoints * pointMultiplier);
+            }
+        }
+
+        // Key collection (value 16)
+        if (player1Alive && map.get(pacman.gridX, pacman.gridY) == 16) {
+            clearTile(pacman.gridX, pacman.gridY);
+            player1HasKey = true;
+            score += (int)(1000 * pointMultiplier);
+        }
+        if (pacman2 != null && player2Alive && map.get(pacman2.gridX, pacman2.gridY) == 16) {
+            clearTile(pacman2.gridX, pacman2.gridY);
+            player2HasKey = true;
+            score2 += (int)(1000 * pointMultiplier);
+        }
+
+        // Key-based rescue mechanic: if player has key and passes within 8 tiles of caught player
+        if (keysEnabled && pacman2 != null) {
+            if (player1HasKey && !player2Alive) {
+                double dist = Math.hypot(pacman.gridX - pacman2.gridX, pacman.gridY - pacman2.gridY);
+                if (dist <= 8) {
+                    player2Alive = true;
+                    player1HasKey = false;
+                    // Respawn player2 at safe location
+                    pacman2.gridX = pacman.gridX;
+                    pacman2.gridY = pacman.gridY;
+                    pacman2.pixelX = pacman2.gridX * TILE_SIZE;
+                    pacman2.pixelY = pacman2.gridY * TILE_SIZE;
+                }
+            }
+            if (player2HasKey && !player1Alive) {
+                double dist = Math.hypot(pacman2.gridX - pacman.gridX, pacman2.gridY - pacman.gridY);
+                if (dist <= 8) {
+                    player1Alive = true;
+                    player2HasKey = false;
+                    // Respawn player1 at safe location
+                    pacman.gridX = pacman2.gridX;
+                    pacman.gridY = pacman2.gridY;
+                    pacman.pixelX = pacman.gridX * TILE_SIZE;
+                    pacman.pixelY = pacman.gridY * TILE_SIZE;
+                }
+            }
+        }
+        return events;
+    }
+
+    // Sets a ghost's target for this tick (personality, multiplayer weighting, fleeing when
+    // frightened) and returns the player it chases
+    Entity aimGhost(Ghost g, Ghost blinky) {
+        // Weighted targeting: Each ghost uses personality-based logic in multiplayer
+        Entity primary = pacman;
+        boolean useMultiplayer = (pacman2 != null && player2Alive && player1Alive);
+
+        if (useMultiplayer) {
+            // Use personality-based targeting for each ghost
+            g.setTargetMultiplayer(pacman, pacman2, blinky, dotsEatenP1, dotsEatenP2);
+        } else {
+            // Single player or only one alive - use standard targeting
+            if (pacman2 != null && player2Alive && !player1Alive) {
+                primary = pacman2;
+            }
+            g.setTarget(primary, blinky);
+        }
+
+        if (useMultiplayer && currentMode == GameController.GhostMode.FRIGHTENED) {
+            // Frightened mode: flee from center of mass of both players
+            int centerX = (pacman.gridX + pacman2.gridX) / 2;
+            int centerY = (pacman.gridY + pacman2.gridY) / 2;
+            // Flee in opposite direction from center of mass
+            int dx = g.gridX - centerX;
+            int dy = g.gridY - centerY;
+            // Normalize and extend
+            double dist = Math.hypot(dx, dy);
+            if (dist > 0.1) {
+                g.targetX = g.gridX + (int)(dx / dist * 10);
+                g.targetY = g.gridY + (int)(dy / dist * 10);
+                // Clamp to map bounds
+                if (g.targetX < 0) g.targetX = 0;
+                if (g.targetX >= map.width) g.targetX = map.width - 1;
+                if (g.targetY < 0) g.targetY = 0;
+                if (g.targetY >= map.height) g.targetY = map.height - 1;
+            } else {
+                // Random if too close
+                g.targetX = random.nextInt(28);
+                g.targetY = random.nextInt(22);
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Decides, on a copy of the world, the moves the ghosts make next tick: the classic ghosts
+     * that reach a junction into dirs and targets (Direction.NONE for the rest), the swarm into
+     * its decide phase. The copy's players stand where they were at the end of this tick.
+     * The copy is left partly advanced and should be restored before reuse.
+     *
+     * Draws come from a stream of their own, keyed by the seed and the coming tick: the copy starts
+     * from the world's random state, and the world goes on drawing from it next tick.
+     * The ghosts decide in the mode the next tick will be in: advance switches it (cycle or
+     * frightened) before any ghost moves, and a pellet eaten then only counts from the tick after.
+     */
+    void decideGhosts(byte[] dirs, int[] targetX, int[] targetY) {
+        random.setState(MatchRandom.mix(seed, globalTicks + 1));
+        currentMode = powerModeTicks > 0 ? GameController.GhostMode.FRIGHTENED : cycleMode(globalTicks + 1);
+        refreshFlowFields();
+        int activeCount = activeGhostCount();
+        Ghost blinky = allGhosts.get(0);
+        int blinkyX = blinky.gridX, blinkyY = blinky.gridY;
+        for (int i = 0; i < allGhosts.size(); i++) {
+            dirs[i] = Direction.NONE;
+            Ghost g = allGhosts.get(i);
+            if (i >= activeCount || !g.decidesThisTick()) continue;
+            Entity primary = aimGhost(g, blinky);
+            g.updateBehavior(map, primary, blinky, currentMode, random);
+            dirs[i] = g.lastDir;
+            targetX[i] = g.targetX;
+            targetY[i] = g.targetY;
+        }
+        swarm.decideAll(map, chasedPlayer(), blinkyX, blinkyY, currentMode, random.nextLong());
+    }
+
+    // The player single-player targeting follows: player 1, or player 2 once player 1 is caught
+    Entity chasedPlayer() {
+        return (pacman2 != null && player2Alive && !player1Alive) ? pacman2 : pacman;
+    }
+
+    /**
+     * Advances a network client by one tick. The host is authoritative for ghosts, collisions and
+     * pickups, so the client only predicts its own player (player 2) and keeps ghost targets fresh.
+     */
+    void stepClient(byte input2, boolean predict) {
+        globalTicks++;
+        if (pacman.ateDot) {
+            score += 10;
+            dotsEatenP1++;
+            pacman.ateDot = false;
+        }
+        if (pacman2 != null) {
+            if (predict && player2Alive) {
+                pacman2.move(input2, map);
+            }
+            if (pacman2.ateDot) {
+                score2 += (int)(10 * pointMultiplier);
+                dotsEatenP2++;
+                pacman2.ateDot = false;
+            }
+        }
+
+        if (powerModeTicks > 0) {
+            powerModeTicks--;
+            currentMode = GameController.GhostMode.FRIGHTENED;
+        }
+
+        refreshFlowFields();
+        int activeCount = activeGhostCount();
+        Ghost blinky = allGhosts.get(0);
+        for (int i = 0; i < activeCount; i++) {
+            Ghost g = allGhosts.get(i);
+            if (pacman2 != null && player2Alive && player1Alive) {
+                g.setTargetMultiplayer(pacman, pacman2, blinky, dotsEatenP1, dotsEatenP2);
+            } else {
+                g.setTarget(pacman2 != null && player2Alive && !player1Alive ? pacman2 : pacman, blinky);
+            }
+        }
+    }
+
+    // Every ghost chasing a player reads the same field, so steering cost doesn't grow with ghost
+    // count. Only needed without a distance table: the table already answers every ghost in O(1),
+    // and rebuilding two fields per player step would cost more than the ghosts themselves.
+    private void refreshFlowFields() {
+        if (distances != null) return;
+        flowFields[0].update(map, pacman.gridX, pacman.gridY);
+        if (pacman2 != null) flowFields[1].update(map, pacman2.gridX, pacman2.gridY);
+    }
+
+    private void savePreviousPositions() {
+        pacman.savePreviousPosition();
+        if (pacman2 != null) pacman2.savePreviousPosition();
+        for (int i = 0; i < allGhosts.size(); i++) {
+            allGhosts.get(i).savePreviousPosition();
+        }
+        swarm.savePreviousPositions();
+    }
+
+    // A ghost touched player 0 or 1: eat it in frightened mode (CONTACT_GHOST_EATEN), otherwise the player is caught
+    private int resolveContact(boolean ghostEaten, int player) {
+        boolean first = player == 0;
+        if (first ? !player1Alive : !player2Alive) return 0; // already caught by an earlier ghost
+        if (currentMode == GameController.GhostMode.FRIGHTENED) {
+            if (ghostEaten) return 0;
+            if (first) score += (int)(200 * pointMultiplier);
+            else score2 += (int)(200 * pointMultiplier);
+            return CONTACT_GHOST_EATEN;
+        }
+        if (first) {
+            player1Alive = false;
+            return EVENT_P1_CAUGHT;
+        }
+        player2Alive = false;
+        return EVENT_P2_CAUGHT;
+    }
+
+    /** True once every dot, power pellet, fruit and key has been collected. */
+    boolean allCollected() {
+        return collectibles.remaining() == 0;
+    }
+
+    /** Writes a tile and keeps the collectible index and, for walls and gates, the path hierarchy in sync. */
+    void setTile(int x, int y, int val) {
+        int version = map.structureVersion();
+        map.set(x, y, val);
+        if (paths != null && map.structureVersion() != version) paths.update(x, y);
+    }
+
+    private void clearTile(int x, int y) {
+        setTile(x, y, 0);
+    }
+
+    /**
+     * Replaces every collectible on the map with the host's authoritative list. Only tiles whose
+     * value differs are written, so the map reports just those as changed.
+     *
+     * @param tiles row, col, value triples
+     * @param count number of triples
+     */
+    void replaceCollectibles(int[] tiles, int count) {
+        int words = (map.width * map.height + 63) >>> 6;
+        if (hostCollectibles.length < words) hostCollectibles = new long[words];
+        long[] listed = hostCollectibles;
+        for (int i = 0; i < count; i++) {
+            int r = tiles[i * 3], c = tiles[i * 3 + 1], val = tiles[i * 3 + 2];
+            if (map.inBounds(c, r) && CollectibleIndex.classOf(val) >= 0) {
+                int t = r * map.width + c;
+                listed[t >>> 6] |= 1L << t;
+                map.set(c, r, val); // no-op if unchanged
+            }
+        }
+        // Clear the dots/pellets/fruits/keys the host no longer has
+        for (int r = 0; r < map.height; r++) {
+            for (int c = 0; c < map.width; c++) {
+                int t = r * map.width + c;
+                if ((listed[t >>> 6] & 1L << t) == 0 && CollectibleIndex.classOf(map.get(c, r)) >= 0) {
+                    map.set(c, r, TileMap.EMPTY);
+                }
+            }
+        }
+        Arrays.fill(listed, 0, words, 0L);
+    }
+
+    boolean allPlayersDown() {
+        return !player1Alive && (pacman2 == null || !player2Alive);
+    }
+
+    /** Exact number of bytes {@link #snapshotInto} writes for the current match. */
+    int snapshotSize() {
+        int size = 2 * 4 + 1 + 4 + 2 * 4 + 4 * 8 + 2 * 8 + 8 * 4 + 6;
+        size += map.serializedSize();
+        size += pacman.stateSize();
+        if (pacman2 != null) size += pacman2.stateSize();
+        for (int i = 0; i < allGhosts.size(); i++) {
+            size += allGhosts.get(i).stateSize();
+        }
+        size += swarm.stateSize();
+        return size;
+    }
+
+    /**
+     * Writes the complete simulation state (map, entities, scores, timers, key flags and RNG state)
+     * at the buffer's position in a fixed layout. Allocates nothing; the buffer needs
+     * {@link #snapshotSize()} bytes remaining.
+     */
+    void snapshotInto(ByteBuffer buf) {
+        buf.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION);
+        buf.put(flag(pacman2 != null)).putInt(allGhosts.size());
+        buf.putInt(difficulty.ordinal()).putInt(currentMode.ordinal());
+        buf.putDouble(entitySpeed).putDouble(scatterDuration).putDouble(chaseDuration).putDouble(pointMultiplier);
+        buf.putLong(seed).putLong(random.getState());
+        buf.putInt(globalTicks).putInt(powerModeTicks).putInt(powerPelletsEaten);
+        buf.putInt(score).putInt(score2).putInt(dotsEatenP1).putInt(dotsEatenP2).putInt(transformationTicks);
+        buf.put(flag(player1Alive)).put(flag(player2Alive)).put(flag(keysEnabled));
+        buf.put(flag(player1HasKey)).put(flag(player2HasKey)).put(flag(keySpawned));
+        map.writeTo(buf);
+        pacman.writeState(buf);
+        if (pacman2 != null) pacman2.writeState(buf);
+        for (int i = 0; i < allGhosts.size(); i++) {
+            allGhosts.get(i).writeState(buf);
+        }
+        swarm.writeState(buf);
+    }
+
+    /**
+     * Restores a state written by {@link #snapshotInto} with the same version. The world must have
+     * been set up with the same player count; the collectible index is kept in sync.
+     *
+     * @throws IllegalArgumentException if the buffer is not a snapshot of this version or shape
+     */
+    void restoreFrom(ByteBuffer buf) {
+        if (planner != null) planner.discard();
+        int magic = buf.getInt(), version = buf.getInt();
+        if (magic != SNAPSHOT_MAGIC || version != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot (magic " + Integer.toHexString(magic) + ", version " + version + ")");
+        }
+        if ((buf.get() != 0) != (pacman2 != null) || buf.getInt() != allGhosts.size()) {
+            throw new IllegalArgumentException("Snapshot player or ghost count doesn't match this world");
+        }
+        GameController.Difficulty diff = DIFFICULTIES[buf.getInt()];
+        if (diff != difficulty) {
+            difficulty = diff;
+            loadMap(diff);
+        }
+        currentMode = GHOST_MODES[buf.getInt()];
+        entitySpeed = buf.getDouble();
+        scatterDuration = buf.getDouble();
+        chaseDuration = buf.getDouble();
+        pointMultiplier = buf.getDouble();
+        seed = buf.getLong();
+        random.setState(buf.getLong());
+        globalTicks = buf.getInt();
+        powerModeTicks = buf.getInt();
+        powerPelletsEaten = buf.getInt();
+        score = buf.getInt();
+        score2 = buf.getInt();
+        dotsEatenP1 = buf.getInt();
+        dotsEatenP2 = buf.getInt();
+        transformationTicks = buf.getInt();
+        player1Alive = buf.get() != 0;
+        player2Alive = buf.get() != 0;
+        keysEnabled = buf.get() != 0;
+        player1HasKey = buf.get() != 0;
+        player2HasKey = buf.get() != 0;
+        keySpawned = buf.get() != 0;
+        map.readFrom(buf);
+        pacman.readState(buf);
+        if (pacman2 != null) pacman2.readState(buf);
+        for (int i = 0; i < allGhosts.size(); i++) {
+            allGhosts.get(i).readState(buf);
+        }
+        swarm.readState(buf);
+    }
+
+    private static byte flag(boolean b) {
+        return (byte) (b ? 1 : 0);
+    }
+
+    private void updateGlobalMode() {
+        if (powerModeTicks > 0) return;
+        currentMode = cycleMode(globalTicks);
+    }
+
+    // Scatter or chase, by where the given tick falls in the cycle
+    private GameController.GhostMode cycleMode(int ticks) {
+        double seconds = ticks / 60.0;
+        double totalCycle = scatterDuration + chaseDuration;
+        double cycleTime = seconds % totalCycle;
+        return (cycleTime < scatterDuration) ? GameController.GhostMode.SCATTER : GameController.GhostMode.CHASE;
+    }
+}
@@ -0,0 +1,249 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte Carlo lookahead for the classic ghosts, an optional brain for INSANE. At the start of a
+ * tick, each ghost about to choose at a junction in chase mode has its options played out: the
+ * world is snapshotted and restored into private sandbox worlds, the ghost is sent down the option,
+ * and the match runs on for {@link #DEPTH} ticks with the players wandering at random and every
+ * other ghost on its usual targeting. The option with the lowest mean escape wins. Escape is the
+ * number of ticks until a player is caught, or DEPTH plus the ghost's remaining walk to the
+ * nearest player if nobody is.
+ *
+ * Rollouts are split into chunks on the common ForkJoin pool, each chunk with its own sandbox, and
+ * every chunk stops at the tick's deadline. The deadline is the budget less a reserve for what
+ * can't be interrupted: the gap between two deadline checks and the time from the chunks finishing
+ * to the plan being handed over, both averaged over recent ticks. Stalls beyond an eighth of the
+ * budget (the thread preempted, a compile) count as no more than that: no reserve absorbs them,
+ * and they show up in {@link #overruns} instead. A ghost whose options didn't all get
+ * {@link #MIN_ROLLOUTS} finished rollouts keeps its own steering (setTarget) for that decision.
+ * Rollout draws are keyed by tick and rollout index, so a decision made within the budget doesn't
+ * depend on thread timing. Whether the budget holds does, so matches using the lookahead aren't
+ * replay-exact.
+ */
+final class GhostLookahead {
+    static final int DEPTH = 90;        // 1.5 s of play per rollout
+    static final int ROLLOUTS = 48;     // per option
+    static final int MIN_ROLLOUTS = 8;
+    private static final int MAX_JOBS = 4 * 3 * ROLLOUTS; // four ghosts, at most three options each
+    private static final int CHECK_TICKS = 8; // rollout ticks between deadline checks
+
+    private final long budgetNanos;
+
+    // Jobs of the tick in progress, rollout-major so every option advances evenly until the deadline
+    private final int[] jobGhost = new int[MAX_JOBS];
+    private final byte[] jobDir = new byte[MAX_JOBS];
+    private final int[] jobSlot = new int[MAX_JOBS];
+    private final float[] escape = new float[MAX_JOBS]; // -1 if the rollout didn't finish
+    private int jobCount, jobsPerRollout;
+    // Per (ghost, option) slot: the ghost, the direction and the totals
+    private final int[] slotGhost = new int[12];
+    private final byte[] slotDir = new byte[12];
+    private final double[] slotSum = new double[12];
+    private final int[] slotCount = new int[12];
+
+    private ByteBuffer snapshot = ByteBuffer.allocate(0);
+    private int snapshotLength;
+    private long deadline, salt;
+    // Budget reserve: moving averages of the longest gap between deadline checks and of join + hand-over
+    private long checkGapNanos, tailNanos;
+    private byte tickInput1, tickInput2;
+    private Chunk[] chunks = new Chunk[0];
+
+    // Totals for benchmarks and the debug overlay; overruns counts plans that took longer than the budget
+    long plans, decisions, fallbacks, rollouts, simulatedTicks, planNanos, overruns, maxPlanNanos;
+
+    /** @param budgetNanos wall-clock time one tick may spend planning */
+    GhostLookahead(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Picks directions for the ghosts that decide this tick and hands them over in
+     * {@link Ghost#forcedDir}. Call before the world steps with the same inputs.
+     */
+    void plan(GameWorld world, byte input1, byte input2) {
+        long start = System.nanoTime();
+        int slots = 0;
+        if (world.currentMode == GameController.GhostMode.CHASE && world.junctions != null) {
+            int active = world.activeGhostCount();
+            for (int i = 0; i < active; i++) {
+                Ghost g = world.allGhosts.get(i);
+                if (!g.decidesThisTick()) continue;
+                int choices = world.junctions.choices(g.gridX, g.gridY, g.lastDir);
+                for (byte d = 0; d < Direction.COUNT; d++) {
+                    if ((choices & (1 << d)) == 0) continue;
+                    slotGhost[slots] = i;
+                    slotDir[slots] = d;
+                    slotSum[slots] = 0;
+                    slotCount[slots] = 0;
+                    slots++;
+                }
+            }
+        }
+        if (slots == 0) return;
+        jobsPerRollout = slots;
+
+        plans++;
+        jobCount = jobsPerRollout * ROLLOUTS;
+        for (int j = 0; j < jobCount; j++) {
+            int s = j % jobsPerRollout;
+            jobSlot[j] = s;
+            jobGhost[j] = slotGhost[s];
+            jobDir[j] = slotDir[s];
+        }
+        snapshotLength = world.snapshotSize();
+        if (snapshot.capacity() < snapshotLength) snapshot = ByteBuffer.allocate(snapshotLength);
+        snapshot.clear();
+        world.snapshotInto(snapshot);
+        deadline = start + budgetNanos - checkGapNanos - tailNanos;
+        salt = MatchRandom.mix(world.seed, world.globalTicks);
+        tickInput1 = input1;
+        tickInput2 = input2;
+        runChunks(world);
+        long finished = 0, gap = 0;
+        for (Chunk chunk : chunks) {
+            simulatedTicks += chunk.ticks;
+            finished = Math.max(finished, chunk.finished);
+            gap = Math.max(gap, chunk.checkGap);
+        }
+
+        // Sum in job order so the result doesn't depend on which chunk finished what
+        for (int j = 0; j < jobCount; j++) {
+            if (escape[j] < 0) continue;
+            slotSum[jobSlot[j]] += escape[j];
+            slotCount[jobSlot[j]]++;
+            rollouts++;
+        }
+        for (int s = 0; s < slots; ) {
+            int ghost = slotGhost[s];
+            byte best = Direction.NONE;
+            double bestMean = Double.MAX_VALUE;
+            boolean complete = true;
+            for (; s < slots && slotGhost[s] == ghost; s++) {
+                if (slotCount[s] < MIN_ROLLOUTS) {
+                    complete = false;
+                    continue;
+                }
+                double mean = slotSum[s] / slotCount[s];
+                if (mean < bestMean) {
+                    bestMean = mean;
+                    best = slotDir[s];
+                }
+            }
+            decisions++;
+            if (complete) world.allGhosts.get(ghost).forcedDir = best;
+            else fallbacks++;
+        }
+        long end = System.nanoTime();
+        long cap = budgetNanos / 8;
+        checkGapNanos += (Math.min(gap, cap) - checkGapNanos) / 8;
+        tailNanos += (Math.min(end - finished, cap) - tailNanos) / 8;
+        long took = end - start;
+        planNanos += took;
+        if (took > budgetNanos) overruns++;
+        maxPlanNanos = Math.max(maxPlanNanos, took);
+    }
+
+    private void runChunks(GameWorld world) {
+        int count = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        if (chunks.length != count) {
+            chunks = new Chunk[count];
+            for (int c = 0; c < count; c++) chunks[c] = new Chunk();
+        }
+        for (int c = 0; c < count; c++) {
+            Chunk chunk = chunks[c];
+            chunk.reinitialize();
+            chunk.first = c;
+            chunk.stride = count;
+            chunk.prepare(world);
+        }
+        if (count == 1) chunks[0].compute();
+        else ForkJoinTask.invokeAll(chunks);
+    }
+
+    // Every stride-th job from first, on a sandbox world of its own; reused every tick
+    private final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        int first, stride;
+        long ticks, finished, checkGap;
+        private long lastCheck;
+        private GameWorld sandbox;
+        private ByteBuffer view;
+
+        void prepare(GameWorld world) {
+            if (sandbox == null || (sandbox.pacman2 != null) != (world.pacman2 != null)
+                    || sandbox.allGhosts.size() != world.allGhosts.size()) {
+                sandbox = new GameWorld();
+                sandbox.setDifficulty(world.difficulty);
+                sandbox.setup(world.difficulty, world.pacman2 != null, world.keysEnabled);
+            }
+            if (view == null || view.capacity() != snapshot.capacity()) view = snapshot.duplicate();
+            ticks = 0;
+            checkGap = 0;
+        }
+
+        @Override
+        protected void compute() {
+            lastCheck = System.nanoTime();
+            for (int j = first; j < jobCount; j += stride) {
+                escape[j] = rollout(j);
+            }
+            finished = System.nanoTime();
+        }
+
+        // False once the deadline has passed; also tracks the longest stretch between two checks
+        private boolean inTime() {
+            long now = System.nanoTime();
+            checkGap = Math.max(checkGap, now - lastCheck);
+            lastCheck = now;
+            return now < deadline;
+        }
+
+        private float rollout(int job) {
+            if (!inTime()) return -1;
+            view.limit(snapshotLength).position(0);
+            sandbox.restoreFrom(view);
+            Ghost ghost = sandbox.allGhosts.get(jobGhost[job]);
+            ghost.forcedDir = jobDir[job];
+            // Keyed by rollout index only: every option faces the same random players
+            long bits = MatchRandom.mix(salt, job / jobsPerRollout);
+            byte in1 = tickInput1, in2 = tickInput2;
+            for (int t = 0; t < DEPTH; t++) {
+                if (t % CHECK_TICKS == CHECK_TICKS - 1 && !inTime()) return -1;
+                int events = sandbox.step(in1, in2);
+                ghost.forcedDir = Direction.NONE;
+                ticks++;
+                if ((events & (GameWorld.EVENT_P1_CAUGHT | GameWorld.EVENT_P2_CAUGHT)) != 0) return t;
+                if ((events & GameWorld.EVENT_ALL_COLLECTED) != 0) return 2 * DEPTH;
+                bits = MatchRandom.mix(bits, t);
+                in1 = wander(sandbox.pacman, sandbox.junctions, bits);
+                if (sandbox.pacman2 != null) in2 = wander(sandbox.pacman2, sandbox.junctions, bits >>> 32);
+            }
+            return DEPTH + (float) Math.min(reach(ghost, sandbox.pacman, sandbox.player1Alive),
+                    reach(ghost, sandbox.pacman2, sandbox.player2Alive));
+        }
+    }
+
+    // Walk from the ghost to a living player, or infinity
+    private static double reach(Ghost ghost, Entity player, boolean alive) {
+        if (player == null || !alive) return Double.MAX_VALUE;
+        return ghost.distanceTo(player.gridX, player.gridY);
+    }
+
+    // Random player: a random legal move other than back whenever it reaches a tile
+    private static byte wander(Entity p, JunctionGraph junctions, long bits) {
+        if (!p.arrivesThisTick()) return p.lastDir;
+        int choices = junctions.choices(p.gridX, p.gridY, p.lastDir);
+        if (choices == 0) choices = junctions.exits(p.gridX, p.gridY);
+        if (choices == 0) return p.lastDir;
+        for (int pick = MatchRandom.nextInt(bits, Integer.bitCount(choices)); pick > 0; pick--) {
+            choices &= choices - 1;
+        }
+        return (byte) Integer.numberOfTrailingZeros(choices);
+    }
+}
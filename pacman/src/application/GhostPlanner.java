@@ -0,0 +1,119 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ghost AI on a dedicated thread, pipelined one tick ahead. After each tick the world hands in a
+ * snapshot (submit); the AI thread restores it into a mirror world of its own and decides the
+ * ghosts' next moves there: targets and steering for the classic ghosts that reach a junction,
+ * the whole decide phase for the swarm. At the start of the next tick, merge waits for that
+ * result and hands it to the world, which then only applies moves, resolves collisions and draws.
+ *
+ * The plan is always waited for and merged, so the match stays deterministic: the ghosts simply
+ * see the players where they stood a tick earlier, though in the mode of the tick they move in.
+ * A plan is dropped if the world was restored or set up again in between (its tick no longer
+ * matches).
+ *
+ * The mirror doesn't share the world's random stream: its frightened targets and the swarm's salt
+ * are drawn from MatchRandom.mix(seed, tick), so no value the world draws next tick was already
+ * used by a plan. The world's stream advances as without the planner, except for the draws of
+ * the classic ghosts that take a planned move.
+ */
+final class GhostPlanner {
+    private final Thread thread;
+    private final Semaphore work = new Semaphore(0);
+    private final Semaphore done = new Semaphore(0);
+    private volatile boolean running = true;
+
+    // Owned by the AI thread between submit and merge, by the caller otherwise
+    private GameWorld mirror;
+    private ByteBuffer copy = ByteBuffer.allocate(0);
+    private int copyTick;
+    private final byte[] dirs = new byte[4];
+    private final int[] targetX = new int[4], targetY = new int[4];
+    private boolean pending; // caller side: a plan was submitted and not merged yet
+
+    // AI thread time for the last plan and in total, and how long merge waited for it
+    volatile long lastPlanNanos;
+    long planNanos, waitNanos, plans;
+
+    GhostPlanner() {
+        thread = new Thread(this::run, "ghost-ai");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Copies the world at the end of a tick and starts planning the next one. */
+    void submit(GameWorld world) {
+        discard(); // a plan nobody used; wait for it so the mirror is free
+        if (mirror == null || (mirror.pacman2 != null) != (world.pacman2 != null)
+                || mirror.allGhosts.size() != world.allGhosts.size()) {
+            mirror = new GameWorld();
+            mirror.setDifficulty(world.difficulty);
+            mirror.setup(world.difficulty, world.pacman2 != null, world.keysEnabled);
+        }
+        int size = world.snapshotSize();
+        if (copy.capacity() < size) copy = ByteBuffer.allocate(size);
+        copy.clear();
+        world.snapshotInto(copy);
+        copy.flip();
+        copyTick = world.globalTicks;
+        pending = true;
+        work.release();
+    }
+
+    /** Waits for the plan of the coming tick and hands it to the world's ghosts and swarm. */
+    void merge(GameWorld world) {
+        if (!pending) return;
+        long start = System.nanoTime();
+        done.acquireUninterruptibly();
+        waitNanos += System.nanoTime() - start;
+        pending = false;
+        if (world.globalTicks != copyTick || world.swarm.size != mirror.swarm.size) return;
+        for (int i = 0; i < world.allGhosts.size() && i < dirs.length; i++) {
+            Ghost g = world.allGhosts.get(i);
+            g.plannedDir = dirs[i];
+            g.plannedTargetX = targetX[i];
+            g.plannedTargetY = targetY[i];
+        }
+        world.swarmPlan = mirror.swarm.size > 0 ? mirror.swarm : null;
+    }
+
+    /** Drops a plan in flight, e.g. because the world was set up again or restored. */
+    void discard() {
+        if (!pending) return;
+        done.acquireUninterruptibly();
+        pending = false;
+    }
+
+    /** Stops the AI thread; the planner can't be used afterwards. */
+    void shutdown() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                work.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                mirror.restoreFrom(copy);
+                mirror.decideGhosts(dirs, targetX, targetY);
+            } catch (RuntimeException e) {
+                // Never leave the game thread waiting: fall back to no plan
+                System.err.println("Ghost AI thread failed: " + e);
+                java.util.Arrays.fill(dirs, Direction.NONE);
+                copyTick = -1;
+            }
+            lastPlanNanos = System.nanoTime() - start;
+            planNanos += lastPlanNanos;
+            plans++;
+            done.release();
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Structure-of-arrays store for swarm ghosts (hundreds of ghosts on one maze). Each ghost is
+ * an index into parallel primitive arrays instead of a Ghost object, and a tick runs as a few
+ * batch passes over them: personality targets, steering plus movement, respawn. The rules are
+ * the same as Ghost.updateBehavior / Entity.move and the Blinky/Pinky/Inky/Clyde subclasses;
+ * the classic four ghosts stay Ghost objects in GameWorld.allGhosts.
+ */
+final class GhostStore {
+    static final byte BLINKY = 0;
+    static final byte PINKY = 1;
+    static final byte INKY = 2;
+    static final byte CLYDE = 3;
+
+    // state bits
+    static final byte IN_JAIL = 1;
+    static final byte EATEN = 1 << 1;
+
+    private static final int TILE = GameWorld.TILE_SIZE;
+    // Tiles ahead of the player each personality aims at (Pinky 4, Inky 2)
+    private static final int[] AHEAD = {0, 4, 2, 0};
+
+    int size;
+    int[] gridX = new int[0], gridY = new int[0];
+    int[] targetX = new int[0], targetY = new int[0];
+    int[] spawnX = new int[0], spawnY = new int[0];
+    int[] scatterX = new int[0], scatterY = new int[0];
+    int[] jailTicks = new int[0];
+    float[] pixelX = new float[0], pixelY = new float[0];
+    float[] prevPixelX = new float[0], prevPixelY = new float[0];
+    byte[] dir = new byte[0];
+    byte[] state = new byte[0];
+    byte[] personality = new byte[0];
+    // Shared by the whole swarm
+    float speed = 0.75f;
+    // Maze distances for the current map; null falls back to straight-line distance
+    DistanceTable distances;
+    // Per-player flow fields kept current by GameWorld, read when the target is a player's tile
+    FlowField[] flowFields = Ghost.NO_FIELDS;
+    // Exit masks of the current map; null makes every ghost decide every tick
+    JunctionGraph junctions;
+
+    // Ghost count from which update() splits the work across the common ForkJoin pool
+    static final int PARALLEL_THRESHOLD = 512;
+    private static final int CHUNK = 128;
+    private static final int DECIDE = 0;
+    private static final int APPLY = 1;
+    // nextDir value for a ghost that sits out this tick (locked in jail)
+    private static final byte HOLD = -2;
+
+    int parallelThreshold = PARALLEL_THRESHOLD;
+
+    // Direction chosen in the decide phase, committed in the apply phase
+    private byte[] nextDir = new byte[0];
+    // Inputs of the tick in progress, read by both phases
+    private final int[] chaseX = new int[4];
+    private final int[] chaseY = new int[4];
+    private TileMap tickMap;
+    private Entity tickPlayer;
+    private GameController.GhostMode tickMode;
+    private long tickSalt;
+    private Chunk[] chunks = new Chunk[0];
+
+    void clear() {
+        size = 0;
+    }
+
+    /** Adds a ghost locked in jail for jailTime ticks at (x, y), which is also its respawn tile. */
+    int add(byte kind, int x, int y, int cornerX, int cornerY, int jailTime) {
+        ensureCapacity(size + 1);
+        int i = size++;
+        personality[i] = kind;
+        gridX[i] = x; gridY[i] = y;
+        spawnX[i] = x; spawnY[i] = y;
+        scatterX[i] = cornerX; scatterY[i] = cornerY;
+        targetX[i] = x; targetY[i] = y;
+        pixelX[i] = x * TILE; pixelY[i] = y * TILE;
+        prevPixelX[i] = pixelX[i]; prevPixelY[i] = pixelY[i];
+        dir[i] = Direction.RIGHT;
+        state[i] = IN_JAIL;
+        jailTicks[i] = jailTime;
+        return i;
+    }
+
+    boolean isEaten(int i) {
+        return (state[i] & EATEN) != 0;
+    }
+
+    void setEaten(int i) {
+        state[i] |= EATEN;
+        dir[i] = Direction.UP;
+    }
+
+    void savePreviousPositions() {
+        System.arraycopy(pixelX, 0, prevPixelX, 0, size);
+        System.arraycopy(pixelY, 0, prevPixelY, 0, size);
+    }
+
+    /**
+     * Advances every ghost by one tick in two phases. Decide computes each ghost's target and
+     * direction into nextDir from the tick-start state only; apply then commits the directions
+     * and moves. A ghost only ever writes its own slot and the random draws are keyed by ghost
+     * index, so from {@link #parallelThreshold} ghosts on (and with more than one core) both phases
+     * are split across the common ForkJoin pool and the result is bit-identical to the serial path.
+     *
+     * @param player  the player the ghosts chase (the surviving one if only one is alive). As with the
+     *                classic ghosts, whose updateBehavior re-targets with setTarget in chase mode, this
+     *                is also what decides chase targets in multiplayer.
+     * @param blinkyX tile of the ghost Inky's vector is based on, at the start of the tick
+     */
+    void update(TileMap map, Entity player, int blinkyX, int blinkyY, GameController.GhostMode mode, MatchRandom random) {
+        if (size == 0) return;
+        decideAll(map, player, blinkyX, blinkyY, mode, random.nextLong());
+        applyAll(map);
+    }
+
+    /**
+     * Runs only the decide phase, leaving the directions for {@link #applyPlanned}. GhostPlanner
+     * calls it on a copy of the world, a tick ahead.
+     */
+    void decideAll(TileMap map, Entity player, int blinkyX, int blinkyY, GameController.GhostMode mode, long salt) {
+        if (size == 0) return;
+        chaseTargets(player, blinkyX, blinkyY);
+        tickMap = map;
+        tickPlayer = player;
+        tickMode = mode;
+        tickSalt = salt;
+        if (size >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1) runParallel(DECIDE);
+        else decide(0, size);
+        tickMap = null;
+        tickPlayer = null;
+    }
+
+    /**
+     * Takes over what plan's decide phase produced (directions, targets, jail timers and state)
+     * and runs the apply phase. plan must have decided from this store's current state.
+     * Draws from random like {@link #update}, so the match's random stream doesn't depend on it.
+     */
+    void applyPlanned(GhostStore plan, TileMap map, MatchRandom random) {
+        if (size == 0) return;
+        if (plan.size != size) throw new IllegalArgumentException("Plan is for " + plan.size + " ghosts, not " + size);
+        random.nextLong();
+        System.arraycopy(plan.nextDir, 0, nextDir, 0, size);
+        System.arraycopy(plan.dir, 0, dir, 0, size);
+        System.arraycopy(plan.state, 0, state, 0, size);
+        System.arraycopy(plan.jailTicks, 0, jailTicks, 0, size);
+        System.arraycopy(plan.targetX, 0, targetX, 0, size);
+        System.arraycopy(plan.targetY, 0, targetY, 0, size);
+        applyAll(map);
+    }
+
+    private void applyAll(TileMap map) {
+        tickMap = map;
+        if (size >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1) runParallel(APPLY);
+        else apply(0, size);
+        tickMap = null;
+    }
+
+    private void decide(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int st = state[i];
+            if ((st & IN_JAIL) != 0) {
+                if (jailTicks[i] > 0) {
+                    jailTicks[i]--;
+                    nextDir[i] = HOLD;
+                    continue;
+                }
+                // Released: nudge upwards towards the exit
+                state[i] = (byte) (st & ~IN_JAIL);
+                dir[i] = Direction.UP;
+            }
+            // Same shortcut as Ghost.updateBehavior: no decision mid-tile or where one move is legal
+            if (junctions != null && (state[i] & EATEN) == 0 && junctions.exits(gridX[i], gridY[i]) != 0) {
+                if (!arrives(i)) {
+                    nextDir[i] = dir[i];
+                    continue;
+                }
+                int choices = junctions.choices(gridX[i], gridY[i], dir[i]);
+                if (Integer.bitCount(choices) == 1) {
+                    nextDir[i] = (byte) Integer.numberOfTrailingZeros(choices);
+                    continue;
+                }
+            }
+            selectTarget(i, tickMap, tickPlayer, tickMode);
+            steer(i, tickMap);
+        }
+    }
+
+    private void apply(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (nextDir[i] == HOLD) continue;
+            dir[i] = nextDir[i];
+            move(i, tickMap);
+            if ((state[i] & EATEN) != 0 && gridX[i] == spawnX[i] && gridY[i] == spawnY[i]
+                    && Math.abs(pixelX[i] - gridX[i] * TILE) < speed && Math.abs(pixelY[i] - gridY[i] * TILE) < speed) {
+                respawn(i);
+            }
+        }
+    }
+
+    private void runParallel(int phase) {
+        int count = (size + CHUNK - 1) / CHUNK;
+        if (chunks.length != count) {
+            Chunk[] resized = Arrays.copyOf(chunks, count);
+            for (int c = chunks.length; c < count; c++) resized[c] = new Chunk();
+            chunks = resized;
+        }
+        for (int c = 0; c < count; c++) {
+            Chunk chunk = chunks[c];
+            chunk.reinitialize();
+            chunk.phase = phase;
+            chunk.from = c * CHUNK;
+            chunk.to = Math.min(size, chunk.from + CHUNK);
+        }
+        ForkJoinTask.invokeAll(chunks);
+    }
+
+    // One slice of ghosts for one phase; reused every tick
+    private final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        int phase, from, to;
+
+        @Override
+        protected void compute() {
+            if (phase == DECIDE) decide(from, to);
+            else apply(from, to);
+        }
+    }
+
+    // Targets that are the same for every ghost of a personality: Blinky the player, Pinky 4 tiles
+    // ahead, Inky twice the vector from Blinky to 2 tiles ahead (Clyde is refined per ghost)
+    private void chaseTargets(Entity p, int blinkyX, int blinkyY) {
+        for (int k = 0; k < 4; k++) {
+            int ahead = AHEAD[k];
+            int tx = p.gridX + Direction.dx(p.lastDir) * ahead;
+            int ty = p.gridY + Direction.dy(p.lastDir) * ahead;
+            if (p.lastDir == Direction.UP) tx -= ahead; // classic overflow bug
+            chaseX[k] = tx;
+            chaseY[k] = ty;
+        }
+        chaseX[INKY] = blinkyX + 2 * (chaseX[INKY] - blinkyX);
+        chaseY[INKY] = blinkyY + 2 * (chaseY[INKY] - blinkyY);
+    }
+
+    private void selectTarget(int i, TileMap map, Entity p, GameController.GhostMode mode) {
+        if ((state[i] & EATEN) != 0) {
+            targetX[i] = spawnX[i]; targetY[i] = spawnY[i];
+        } else if (mode == GameController.GhostMode.SCATTER) {
+            targetX[i] = scatterX[i]; targetY[i] = scatterY[i];
+        } else if (mode == GameController.GhostMode.FRIGHTENED) {
+            // Keyed by ghost index so the draw doesn't depend on which thread gets there first
+            targetX[i] = MatchRandom.nextInt(MatchRandom.mix(tickSalt, 2L * i), map.width);
+            targetY[i] = MatchRandom.nextInt(MatchRandom.mix(tickSalt, 2L * i + 1), map.height);
+        } else {
+            int kind = personality[i];
+            // Clyde retreats to his corner within 4 tiles
+            boolean retreat = kind == CLYDE && withinFour(i, p);
+            targetX[i] = retreat ? scatterX[i] : chaseX[kind];
+            targetY[i] = retreat ? scatterY[i] : chaseY[kind];
+        }
+    }
+
+    // Same rule as Ghost.distanceTo: walking distance when known, straight line otherwise
+    private boolean withinFour(int i, Entity p) {
+        FlowField field = fieldTo(p.gridX, p.gridY);
+        if (field != null) {
+            int steps = field.distance(gridX[i], gridY[i]);
+            if (steps >= 0) return steps <= 4;
+        }
+        if (distances != null) {
+            int steps = distances.distance(gridX[i], gridY[i], p.gridX, p.gridY, false);
+            if (steps >= 0) return steps <= 4;
+        }
+        return sq(gridX[i] - p.gridX, gridY[i] - p.gridY) <= 16;
+    }
+
+    // Shortest step towards the target (through the maze when the target is walkable, in a
+    // straight line otherwise), not reversing unless it's the only way
+    private void steer(int i, TileMap map) {
+        int gx = gridX[i], gy = gridY[i];
+        int tx = targetX[i], ty = targetY[i];
+        boolean eaten = (state[i] & EATEN) != 0;
+        FlowField field = eaten ? null : fieldTo(tx, ty);
+        if (field != null && field.distance(gx, gy) < 0) field = null;
+        DistanceTable table = distances;
+        boolean walk = field == null && table != null && table.distance(gx, gy, tx, ty, eaten) >= 0;
+        byte last = dir[i];
+        byte best = last;
+        int bestDist = Integer.MAX_VALUE;
+        int valid = 0;
+        for (byte d = 0; d < Direction.COUNT; d++) {
+            if (Direction.isOpposite(d, last)) continue;
+            int nx = gx + Direction.DX[d], ny = gy + Direction.DY[d];
+            if (!map.inBounds(nx, ny) || map.isWall(nx, ny)) continue;
+            if (!eaten && map.isGate(nx, ny)) continue;
+            valid++;
+            int dist;
+            if (field != null) {
+                dist = field.distanceAfterMove(gx, gy, d);
+                if (dist < 0) dist = Integer.MAX_VALUE;
+            } else if (walk) {
+                dist = table.distanceAfterMove(gx, gy, d, tx, ty, eaten);
+                if (dist < 0) dist = Integer.MAX_VALUE;
+            } else {
+                dist = sq(nx - tx, ny - ty);
+            }
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = d;
+            }
+        }
+        if (valid == 0 && last >= 0) {
+            byte back = Direction.OPPOSITE[last];
+            int nx = gx + Direction.DX[back], ny = gy + Direction.DY[back];
+            if (map.inBounds(nx, ny) && !map.isWall(nx, ny) && (eaten || !map.isGate(nx, ny))) {
+                best = back;
+            }
+        }
+        nextDir[i] = best;
+    }
+
+    // Entity.move for a ghost: glide to the current tile, then take the next step in dir
+    private void move(int i, TileMap map) {
+        float s = speed;
+        float tpx = gridX[i] * TILE, tpy = gridY[i] * TILE;
+        float px = pixelX[i], py = pixelY[i];
+        if (px < tpx) px = Math.min(px + s, tpx);
+        else if (px > tpx) px = Math.max(px - s, tpx);
+        if (py < tpy) py = Math.min(py + s, tpy);
+        else if (py > tpy) py = Math.max(py - s, tpy);
+        if (Math.abs(px - tpx) < s && Math.abs(py - tpy) < s) {
+            px = tpx;
+            py = tpy;
+            byte d = dir[i];
+            int nx = gridX[i] + Direction.dx(d), ny = gridY[i] + Direction.dy(d);
+            if (map.inBounds(nx, ny)) {
+                boolean teleported = false;
+                if (map.get(nx, ny) == TileMap.TUNNEL) {
+                    if (d == Direction.LEFT) { nx = map.width - 1; teleported = true; }
+                    else if (d == Direction.RIGHT) { nx = 0; teleported = true; }
+                }
+                if (!map.isWall(nx, ny)) {
+                    gridX[i] = nx; gridY[i] = ny;
+                    if (teleported) {
+                        px = nx * TILE;
+                        py = ny * TILE;
+                    }
+                }
+            }
+        }
+        pixelX[i] = px;
+        pixelY[i] = py;
+    }
+
+    // True if this tick's move(i) reaches the current tile and takes the next step
+    private boolean arrives(int i) {
+        float s = speed;
+        float tpx = gridX[i] * TILE, tpy = gridY[i] * TILE;
+        float px = pixelX[i] < tpx ? Math.min(pixelX[i] + s, tpx) : Math.max(pixelX[i] - s, tpx);
+        float py = pixelY[i] < tpy ? Math.min(pixelY[i] + s, tpy) : Math.max(pixelY[i] - s, tpy);
+        return Math.abs(px - tpx) < s && Math.abs(py - tpy) < s;
+    }
+
+    private void respawn(int i) {
+        gridX[i] = spawnX[i]; gridY[i] = spawnY[i];
+        pixelX[i] = gridX[i] * TILE; pixelY[i] = gridY[i] * TILE;
+        state[i] = IN_JAIL;
+        if (jailTicks[i] == 0) jailTicks[i] = 600;
+        dir[i] = Direction.UP;
+    }
+
+    private FlowField fieldTo(int x, int y) {
+        for (FlowField f : flowFields) {
+            if (f.leadsTo(x, y)) return f;
+        }
+        return null;
+    }
+
+    private static int sq(int dx, int dy) {
+        return dx * dx + dy * dy;
+    }
+
+    /** Bytes written by {@link #writeState}. */
+    int stateSize() {
+        return 2 * 4 + size * (9 * 4 + 4 * 4 + 3);
+    }
+
+    void writeState(ByteBuffer buf) {
+        buf.putInt(size).putFloat(speed);
+        for (int i = 0; i < size; i++) {
+            buf.putInt(gridX[i]).putInt(gridY[i]).putInt(targetX[i]).putInt(targetY[i]);
+            buf.putInt(spawnX[i]).putInt(spawnY[i]).putInt(scatterX[i]).putInt(scatterY[i]).putInt(jailTicks[i]);
+            buf.putFloat(pixelX[i]).putFloat(pixelY[i]).putFloat(prevPixelX[i]).putFloat(prevPixelY[i]);
+            buf.put(dir[i]).put(state[i]).put(personality[i]);
+        }
+    }
+
+    void readState(ByteBuffer buf) {
+        int n = buf.getInt();
+        ensureCapacity(n);
+        size = n;
+        speed = buf.getFloat();
+        for (int i = 0; i < n; i++) {
+            gridX[i] = buf.getInt(); gridY[i] = buf.getInt();
+            targetX[i] = buf.getInt(); targetY[i] = buf.getInt();
+            spawnX[i] = buf.getInt(); spawnY[i] = buf.getInt();
+            scatterX[i] = buf.getInt(); scatterY[i] = buf.getInt();
+            jailTicks[i] = buf.getInt();
+            pixelX[i] = buf.getFloat(); pixelY[i] = buf.getFloat();
+            prevPixelX[i] = buf.getFloat(); prevPixelY[i] = buf.getFloat();
+            dir[i] = buf.get(); state[i] = buf.get(); personality[i] = buf.get();
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= gridX.length) return;
+        int cap = Math.max(n, Math.max(16, gridX.length * 2));
+        gridX = Arrays.copyOf(gridX, cap); gridY = Arrays.copyOf(gridY, cap);
+        targetX = Arrays.copyOf(targetX, cap); targetY = Arrays.copyOf(targetY, cap);
+        spawnX = Arrays.copyOf(spawnX, cap); spawnY = Arrays.copyOf(spawnY, cap);
+        scatterX = Arrays.copyOf(scatterX, cap); scatterY = Arrays.copyOf(scatterY, cap);
+        jailTicks = Arrays.copyOf(jailTicks, cap);
+        pixelX = Arrays.copyOf(pixelX, cap); pixelY = Arrays.copyOf(pixelY, cap);
+        prevPixelX = Arrays.copyOf(prevPixelX, cap); prevPixelY = Arrays.copyOf(prevPixelY, cap);
+        dir = Arrays.copyOf(dir, cap);
+        nextDir = Arrays.copyOf(nextDir, cap);
+        state = Arrays.copyOf(state, cap);
+        personality = Arrays.copyOf(personality, cap);
+    }
+}
@@ -0,0 +1,547 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical A* (HPA*) for mazes too large for a DistanceTable. The map is cut into square
+ * clusters; each run of open tiles along a cluster border becomes one entrance, a pair of
+ * abstract nodes joined by a single step. Tunnel moves and other one-way steps across a border are
+ * entrances of their own. Within a cluster, walking distances between its nodes are precomputed.
+ *
+ * A query connects start and goal to the nodes of their clusters, searches the abstract graph,
+ * then refines each hop into tiles with a small search inside one cluster. Paths are near-optimal:
+ * detours that leave a cluster between two of its own nodes aren't seen.
+ *
+ * Gates are closed (players and roaming ghosts). When a tile's structure changes, {@link #update}
+ * redoes only the borders and clusters around it; a change that isn't reported is caught by the
+ * map's structure version and costs a full rebuild. Not thread-safe: one query at a time.
+ */
+final class HierarchicalPathfinder {
+    static final int CLUSTER = 16;
+
+    private static final byte START = -1;
+    private static final byte LOCAL = 0; // reached through the cluster (or from the start)
+    private static final byte INTER = 1; // reached by an entrance step
+
+    private final TileMap map;
+    private final int width, height, size;
+    private final int clusterCols, clusterRows;
+    private boolean wraps;
+    private int version;
+
+    // transitions[tile]: bit d set if the step in direction d is an entrance into another cluster;
+    // incoming[tile]: bit d set if an entrance step in direction d lands here
+    private final byte[] transitions;
+    private final byte[] incoming;
+    private final int[][] nodes;  // per cluster: node tiles
+    // Per cluster, edges between its k nodes: entries 0..k hold where each node's (to slot, length)
+    // pairs start in the same array. Edges that only repeat a walk through a third node are left out.
+    private final int[][] intra;
+    private final int[] slot;     // tile -> index in its cluster's node list, -1 if not a node
+    // Totals over all clusters that bound the query scratch, kept up by cluster() and setTransition()
+    private int nodeTotal, intraEdgeTotal, transitionTotal;
+
+    // Abstract search over tile ids, plus one virtual goal node (id = tiles). Sized by
+    // sizeScratch() whenever the abstraction changes, so queries never allocate.
+    private final int[] gScore, parent, seen, closed;
+    private final byte[] via;
+    private int generation;
+    private long[] heap = new long[0];
+
+    // Searches inside one cluster: out of the start's, into the goal's, and one for refining hops
+    // and building clusters
+    private final Local fromStart, toGoal, hop;
+    private final int[] segment;
+    private int[] chain = new int[0];
+    private final int[] firstSteps = new int[2];
+
+    HierarchicalPathfinder(TileMap map) {
+        this(map, CLUSTER);
+    }
+
+    HierarchicalPathfinder(TileMap map, int clusterSize) {
+        this.map = map;
+        this.width = map.width;
+        this.height = map.height;
+        this.size = clusterSize;
+        this.clusterCols = (width + size - 1) / size;
+        this.clusterRows = (height + size - 1) / size;
+        int tiles = width * height;
+        transitions = new byte[tiles];
+        incoming = new byte[tiles];
+        nodes = new int[clusterCols * clusterRows][];
+        intra = new int[nodes.length][];
+        slot = new int[tiles];
+        gScore = new int[tiles + 1];
+        parent = new int[tiles + 1];
+        seen = new int[tiles + 1];
+        closed = new int[tiles + 1];
+        via = new byte[tiles + 1];
+        fromStart = new Local(size);
+        toGoal = new Local(size);
+        hop = new Local(size);
+        segment = new int[size * size];
+        rebuild();
+    }
+
+    /** Recomputes the whole abstraction. */
+    void rebuild() {
+        Arrays.fill(transitions, (byte) 0);
+        Arrays.fill(incoming, (byte) 0);
+        Arrays.fill(slot, -1);
+        Arrays.fill(nodes, null);
+        nodeTotal = intraEdgeTotal = transitionTotal = 0;
+        wraps = false;
+        for (int cy = 0; cy < clusterRows; cy++) {
+            for (int cx = 0; cx < clusterCols; cx++) {
+                if (cx + 1 < clusterCols) border(cx, cy, true);
+                if (cy + 1 < clusterRows) border(cx, cy, false);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                wrapsFrom(x, y);
+            }
+        }
+        for (int c = 0; c < nodes.length; c++) {
+            cluster(c, true);
+        }
+        sizeScratch();
+        version = map.structureVersion();
+    }
+
+    /**
+     * Call after the tile at (x, y) changed between open, wall, gate or tunnel. Redoes the borders
+     * of its cluster and the clusters they touch.
+     */
+    void update(int x, int y) {
+        int cx = x / size, cy = y / size;
+        if (cx > 0) border(cx - 1, cy, true);
+        if (cx + 1 < clusterCols) border(cx, cy, true);
+        if (cy > 0) border(cx, cy - 1, false);
+        if (cy + 1 < clusterRows) border(cx, cy, false);
+        // Steps into (x, y) from a neighbour may now wrap or stop wrapping, and tunnels land on the edges
+        wrapsFrom(x, y);
+        if (x > 0) wrapsFrom(x - 1, y);
+        if (x + 1 < width) wrapsFrom(x + 1, y);
+        if (x == width - 1) wrapsFrom(1, y);
+        if (x == 0) wrapsFrom(width - 2, y);
+
+        // Neighbouring clusters only need new edges if their entrances moved
+        cluster(cy * clusterCols + cx, true);
+        if (cx > 0) cluster(cy * clusterCols + cx - 1, false);
+        if (cx + 1 < clusterCols) cluster(cy * clusterCols + cx + 1, false);
+        if (cy > 0) cluster((cy - 1) * clusterCols + cx, false);
+        if (cy + 1 < clusterRows) cluster((cy + 1) * clusterCols + cx, false);
+        if (wraps) {
+            // Tunnel ends are in the edge clusters of the row
+            cluster(cy * clusterCols, false);
+            cluster(cy * clusterCols + clusterCols - 1, false);
+        }
+        sizeScratch();
+        version = map.structureVersion();
+    }
+
+    int nodeCount() {
+        return nodeTotal;
+    }
+
+    // Every closed node offers each of its edges at most once, on top of the start's nodes, the
+    // goal's nodes and the direct hop: that bounds the heap. The abstract path visits each node once.
+    private void sizeScratch() {
+        int offers = intraEdgeTotal + transitionTotal + 2 * size * size + 1;
+        if (heap.length < offers) heap = new long[offers + offers / 4];
+        if (chain.length < nodeTotal) chain = new int[nodeTotal + nodeTotal / 4];
+    }
+
+    /**
+     * Finds a path and writes its tile ids (y * width + x), start first, into out.
+     *
+     * @return the number of tiles on the path including start and goal, or 0 if there is none.
+     *         If it is larger than out.length only the first out.length tiles are written.
+     */
+    int findPath(int sx, int sy, int gx, int gy, int[] out) {
+        if (version != map.structureVersion()) rebuild();
+        if (!open(sx, sy) || !open(gx, gy)) return 0;
+        int start = sy * width + sx, goal = gy * width + gx;
+        if (start == goal) {
+            if (out.length > 0) out[0] = start;
+            return 1;
+        }
+        int startCluster = clusterOf(start), goalCluster = clusterOf(goal);
+        fromStart.search(start, false);
+        toGoal.search(goal, true);
+
+        int gen = nextGeneration();
+        int virtualGoal = width * height;
+        int heapSize = 0;
+        int direct = startCluster == goalCluster ? fromStart.distance(goal) : -1;
+        if (direct >= 0) {
+            heapSize = offer(heapSize, gen, virtualGoal, direct, -1, LOCAL, 0);
+        }
+        for (int n : nodes[startCluster]) {
+            int d = fromStart.distance(n);
+            if (d >= 0) heapSize = offer(heapSize, gen, n, d, -1, START, heuristic(n, goal));
+        }
+        while (heapSize > 0) {
+            long top = heap[0];
+            heapSize = pop(heapSize);
+            int u = (int) top;
+            if (closed[u] == gen) continue;
+            closed[u] = gen;
+            if (u == virtualGoal) return writePath(start, goal, out);
+            int g = gScore[u];
+            int c = clusterOf(u);
+            int[] list = nodes[c], edges = intra[c];
+            for (int e = edges[slot[u]], end = edges[slot[u] + 1]; e < end; e += 2) {
+                int v = list[edges[e]];
+                heapSize = offer(heapSize, gen, v, g + edges[e + 1], u, LOCAL, heuristic(v, goal));
+            }
+            int mask = transitions[u];
+            for (byte dir = 0; dir < Direction.COUNT; dir++) {
+                if ((mask & (1 << dir)) == 0) continue;
+                int v = map.neighbor(u % width, u / width, dir, false);
+                if (v >= 0) heapSize = offer(heapSize, gen, v, g + 1, u, INTER, heuristic(v, goal));
+            }
+            if (c == goalCluster) {
+                int d = toGoal.distance(u);
+                if (d >= 0) heapSize = offer(heapSize, gen, virtualGoal, g + d, u, LOCAL, 0);
+            }
+        }
+        return 0;
+    }
+
+    /** Second tile of a path from (sx, sy) to (gx, gy), or -1 if there is no path or they're equal. */
+    int nextTile(int sx, int sy, int gx, int gy) {
+        int length = findPath(sx, sy, gx, gy, firstSteps);
+        return length >= 2 ? firstSteps[1] : -1;
+    }
+
+    // Abstract path: goal <- ... <- first node (parent -1). Refine each hop into tiles.
+    private int writePath(int start, int goal, int[] out) {
+        int virtualGoal = width * height;
+        int last = parent[virtualGoal];
+        if (last < 0) {
+            // Direct path inside the start cluster
+            return fromStart.appendPathTo(goal, out, 0, true);
+        }
+        // Nodes of the abstract path, first to last
+        int count = 0;
+        for (int n = last; n >= 0; n = parent[n]) count++;
+        for (int n = last, i = count - 1; n >= 0; n = parent[n], i--) chain[i] = n;
+
+        int length = fromStart.appendPathTo(chain[0], out, 0, true);
+        for (int i = 1; i < count; i++) {
+            int from = chain[i - 1], to = chain[i];
+            if (via[to] == INTER) {
+                if (length < out.length) out[length] = to;
+                length++;
+            } else {
+                hop.search(from, to);
+                length = hop.appendPathTo(to, out, length, false);
+            }
+        }
+        return toGoal.appendPathFrom(chain[count - 1], out, length);
+    }
+
+    private int offer(int heapSize, int gen, int node, int g, int from, byte how, int h) {
+        if (closed[node] == gen) return heapSize;
+        if (seen[node] == gen && gScore[node] <= g) return heapSize;
+        seen[node] = gen;
+        gScore[node] = g;
+        parent[node] = from;
+        via[node] = how;
+        return push(heapSize, ((long) (g + h) << 32) | node);
+    }
+
+    // Manhattan distance; with tunnels a row can also be crossed the other way round
+    private int heuristic(int tile, int goal) {
+        int dx = Math.abs(tile % width - goal % width);
+        if (wraps) dx = Math.min(dx, width - 1 - dx);
+        return dx + Math.abs(tile / width - goal / width);
+    }
+
+    private boolean open(int x, int y) {
+        return map.inBounds(x, y) && !map.isWall(x, y) && !map.isGate(x, y);
+    }
+
+    private int clusterOf(int tile) {
+        return (tile / width / size) * clusterCols + (tile % width) / size;
+    }
+
+    // Entrances across the border to the right of (horizontal) or below cluster (cx, cy)
+    private void border(int cx, int cy, boolean horizontal) {
+        byte forward = horizontal ? Direction.RIGHT : Direction.DOWN;
+        byte back = Direction.OPPOSITE[forward];
+        int length = horizontal ? Math.min(size, height - cy * size) : Math.min(size, width - cx * size);
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean both = false;
+            if (i < length) {
+                int ax = horizontal ? cx * size + size - 1 : cx * size + i;
+                int ay = horizontal ? cy * size + i : cy * size + size - 1;
+                int bx = ax + Direction.DX[forward], by = ay + Direction.DY[forward];
+                int a = ay * width + ax, b = by * width + bx;
+                int ab = map.neighbor(ax, ay, forward, false), ba = map.neighbor(bx, by, back, false);
+                // Steps that wrap are tunnels, handled by wrapsFrom
+                if (ab == -1 || ab == b) setTransition(a, forward, false);
+                if (ba == -1 || ba == a) setTransition(b, back, false);
+                both = ab == b && ba == a;
+                // One-way steps are entrances of their own
+                if (ab == b && ba != a) setTransition(a, forward, true);
+                if (ba == a && ab != b) setTransition(b, back, true);
+            }
+            if (both && runStart < 0) runStart = i;
+            if (!both && runStart >= 0) {
+                // One entrance per run of open pairs, in the middle
+                int mid = (runStart + i - 1) / 2;
+                int ax = horizontal ? cx * size + size - 1 : cx * size + mid;
+                int ay = horizontal ? cy * size + mid : cy * size + size - 1;
+                int a = ay * width + ax;
+                int b = (ay + Direction.DY[forward]) * width + ax + Direction.DX[forward];
+                setTransition(a, forward, true);
+                setTransition(b, back, true);
+                runStart = -1;
+            }
+        }
+    }
+
+    // Horizontal steps from (x, y) that wrap through a tunnel into another cluster
+    private void wrapsFrom(int x, int y) {
+        int t = y * width + x;
+        for (byte d = Direction.LEFT; d <= Direction.RIGHT; d++) {
+            int nx = x + Direction.DX[d];
+            if (nx < 0 || nx >= width) continue;
+            boolean tunnel = map.get(nx, y) == TileMap.TUNNEL;
+            int n = map.neighbor(x, y, d, false);
+            if (tunnel) wraps = true;
+            if (tunnel && n >= 0 && n != y * width + nx) {
+                setTransition(t, d, clusterOf(n) != clusterOf(t));
+            } else if (tunnel || clusterOf(y * width + nx) == clusterOf(t)) {
+                // Steps that don't leave the cluster are never entrances; border() owns the rest
+                setTransition(t, d, false);
+            }
+        }
+    }
+
+    private void setTransition(int tile, byte d, boolean on) {
+        int bit = 1 << d;
+        if (((transitions[tile] & bit) != 0) == on) return;
+        int target = map.neighbor(tile % width, tile / width, d, false);
+        transitionTotal += on ? 1 : -1;
+        if (on) {
+            transitions[tile] |= bit;
+            if (target >= 0) incoming[target] |= bit;
+        } else {
+            transitions[tile] &= ~bit;
+            if (target >= 0) incoming[target] &= ~bit;
+        }
+    }
+
+    // Node list and inner edges of one cluster; unless its own tiles changed, only if the nodes did
+    private void cluster(int c, boolean tilesChanged) {
+        int cx = c % clusterCols, cy = c / clusterCols;
+        int x0 = cx * size, y0 = cy * size;
+        int x1 = Math.min(width, x0 + size), y1 = Math.min(height, y0 + size);
+        int k = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int t = y * width + x;
+                if ((transitions[t] | incoming[t]) != 0 && open(x, y)) segment[k++] = t;
+            }
+        }
+        int[] old = nodes[c];
+        if (!tilesChanged && old != null && Arrays.equals(old, 0, old.length, segment, 0, k)) return;
+        if (old != null) {
+            for (int n : old) slot[n] = -1;
+            nodeTotal -= old.length;
+            intraEdgeTotal -= (intra[c].length - old.length - 1) / 2;
+        }
+        int[] list = Arrays.copyOf(segment, k);
+        for (int i = 0; i < k; i++) slot[list[i]] = i;
+
+        int[] dist = new int[k * k];
+        for (int i = 0; i < k; i++) {
+            hop.search(list[i], -1);
+            for (int j = 0; j < k; j++) {
+                dist[i * k + j] = hop.distance(list[j]);
+            }
+        }
+        // Keep i -> j unless some m lies on a shortest walk between them
+        int[] edges = new int[k + 1 + 2 * k * Math.max(0, k - 1)];
+        int e = k + 1;
+        for (int i = 0; i < k; i++) {
+            edges[i] = e;
+            for (int j = 0; j < k; j++) {
+                int d = dist[i * k + j];
+                if (d <= 0) continue;
+                boolean through = false;
+                for (int m = 0; m < k && !through; m++) {
+                    int a = dist[i * k + m], b = dist[m * k + j];
+                    through = a > 0 && b > 0 && a + b == d;
+                }
+                if (through) continue;
+                edges[e++] = j;
+                edges[e++] = d;
+            }
+        }
+        edges[k] = e;
+        nodes[c] = list;
+        intra[c] = Arrays.copyOf(edges, e);
+        nodeTotal += k;
+        intraEdgeTotal += (e - k - 1) / 2;
+    }
+
+    private int nextGeneration() {
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    private int push(int heapSize, long key) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heap[p] <= key) break;
+            heap[i] = heap[p];
+            i = p;
+        }
+        heap[i] = key;
+        return heapSize;
+    }
+
+    private int pop(int heapSize) {
+        long last = heap[--heapSize];
+        int i = 0, half = heapSize >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < heapSize && heap[c + 1] < heap[c]) c++;
+            if (last <= heap[c]) break;
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = last;
+        return heapSize;
+    }
+
+    /**
+     * Breadth-first search confined to one cluster, forwards from a tile or backwards towards it.
+     * Scratch is indexed by position inside the cluster and stamped, so searches don't clear it.
+     */
+    private final class Local {
+        private final int[] dist, link, stamp, queue;
+        private int generation, origin, x0, y0, x1, y1;
+
+        Local(int size) {
+            dist = new int[size * size];
+            link = new int[size * size]; // forwards: previous tile; backwards: next tile towards the origin
+            stamp = new int[size * size];
+            queue = new int[size * size];
+        }
+
+        void search(int from, boolean backwards) {
+            search(from, backwards, -1);
+        }
+
+        // Forwards from a tile, stopping once target (if not -1) is reached
+        void search(int from, int target) {
+            search(from, false, target);
+        }
+
+        private void search(int from, boolean backwards, int target) {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+            int c = clusterOf(from);
+            x0 = (c % clusterCols) * size;
+            y0 = (c / clusterCols) * size;
+            x1 = Math.min(width, x0 + size);
+            y1 = Math.min(height, y0 + size);
+            origin = from;
+            int head = 0, tail = 0;
+            mark(from, 0, -1);
+            queue[tail++] = from;
+            while (head < tail) {
+                int t = queue[head++];
+                int x = t % width, y = t / width;
+                int next = dist[index(t)] + 1;
+                if (!backwards) {
+                    for (byte d = 0; d < Direction.COUNT; d++) {
+                        int n = map.neighbor(x, y, d, false);
+                        if (n >= 0 && inside(n) && stamp[index(n)] != generation) {
+                            mark(n, next, t);
+                            if (n == target) return;
+                            queue[tail++] = n;
+                        }
+                    }
+                } else {
+                    // Tiles that reach t in one step: its neighbours, and across the row for tunnels
+                    tail = reach(t, x - 1, y, Direction.RIGHT, next, tail);
+                    tail = reach(t, x + 1, y, Direction.LEFT, next, tail);
+                    tail = reach(t, x, y - 1, Direction.DOWN, next, tail);
+                    tail = reach(t, x, y + 1, Direction.UP, next, tail);
+                    if (x == width - 1) tail = reach(t, 1, y, Direction.LEFT, next, tail);
+                    if (x == 0) tail = reach(t, width - 2, y, Direction.RIGHT, next, tail);
+                }
+            }
+        }
+
+        int distance(int tile) {
+            if (!inside(tile)) return -1;
+            int i = index(tile);
+            return stamp[i] == generation ? dist[i] : -1;
+        }
+
+        // Forward search: appends the path origin..tile (origin only if withOrigin) at out[length]
+        int appendPathTo(int tile, int[] out, int length, boolean withOrigin) {
+            int n = 0;
+            for (int t = tile; t != origin; t = link[index(t)]) segment[n++] = t;
+            if (withOrigin) segment[n++] = origin;
+            for (int i = n - 1; i >= 0; i--, length++) {
+                if (length < out.length) out[length] = segment[i];
+            }
+            return length;
+        }
+
+        // Backward search: appends the path after tile up to the origin at out[length]
+        int appendPathFrom(int tile, int[] out, int length) {
+            for (int t = tile; t != origin; ) {
+                t = link[index(t)];
+                if (length < out.length) out[length] = t;
+                length++;
+            }
+            return length;
+        }
+
+        private int reach(int t, int px, int py, byte d, int next, int tail) {
+            if (px < 0 || py < 0 || px >= width || py >= height) return tail;
+            int p = py * width + px;
+            if (!inside(p) || stamp[index(p)] == generation || !open(px, py)) return tail;
+            if (map.neighbor(px, py, d, false) != t) return tail;
+            mark(p, next, t);
+            queue[tail++] = p;
+            return tail;
+        }
+
+        private void mark(int tile, int d, int from) {
+            int i = index(tile);
+            stamp[i] = generation;
+            dist[i] = d;
+            link[i] = from;
+        }
+
+        private boolean inside(int tile) {
+            int x = tile % width, y = tile / width;
+            return x >= x0 && x < x1 && y >= y0 && y < y1;
+        }
+
+        private int index(int tile) {
+            return (tile / width - y0) * size + (tile % width - x0);
+        }
+    }
+}
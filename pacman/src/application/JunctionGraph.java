@@ -0,0 +1,190 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * The maze compressed to its decision points. Every tile gets a bitmask of the directions a
+ * roaming ghost can leave it by (gates closed, tunnels wrap); tiles with other than two exits
+ * (junctions and dead ends) and tunnel mouths become nodes, and the corridors between them
+ * become weighted, directed edges. Ghosts use the exit masks to skip decisions wherever only one
+ * move is legal, and searches between nodes run on a graph a fraction of the size of the tile
+ * grid. The exit masks are read-only once built; {@link #distance} uses shared scratch, so
+ * searches must not run concurrently.
+ */
+final class JunctionGraph {
+    final int width;
+    final int height;
+    // exits[tile]: bit d set if moving in direction d from the tile is legal
+    private final byte[] exits;
+    private final int[] nodeOf;    // tile -> node id, or -1 for corridor/wall tiles
+    private final int[] nodeTile;  // node id -> tile
+    // Edges in CSR form: edges of node n are firstEdge[n] .. firstEdge[n + 1] - 1
+    private final int[] firstEdge;
+    private final int[] edgeTo;
+    private final int[] edgeLength;
+
+    // Dijkstra scratch, reused between searches (one search at a time)
+    private final int[] best;
+    private final int[] stamp;
+    private int generation;
+    private long[] heap = new long[16];
+
+    JunctionGraph(TileMap map) {
+        width = map.width;
+        height = map.height;
+        int tiles = width * height;
+        exits = new byte[tiles];
+        nodeOf = new int[tiles];
+        Arrays.fill(nodeOf, -1);
+        int nodes = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (map.isWall(x, y) || map.isGate(x, y)) continue;
+                int mask = 0;
+                boolean oneWay = false;
+                for (byte d = 0; d < Direction.COUNT; d++) {
+                    int n = map.neighbor(x, y, d, false);
+                    if (n < 0) continue;
+                    mask |= 1 << d;
+                    // Tunnel moves don't lead back the way they came; turning round there can pay off
+                    oneWay |= map.neighbor(n % width, n / width, Direction.OPPOSITE[d], false) != y * width + x;
+                }
+                exits[y * width + x] = (byte) mask;
+                if (mask != 0 && (Integer.bitCount(mask) != 2 || oneWay)) nodeOf[y * width + x] = nodes++;
+            }
+        }
+        nodeTile = new int[nodes];
+        for (int t = 0; t < tiles; t++) {
+            if (nodeOf[t] >= 0) nodeTile[nodeOf[t]] = t;
+        }
+
+        // Follow each exit of each node along its corridor to the next node
+        firstEdge = new int[nodes + 1];
+        int[] to = new int[nodes * Direction.COUNT];
+        int[] length = new int[nodes * Direction.COUNT];
+        int edges = 0;
+        for (int n = 0; n < nodes; n++) {
+            firstEdge[n] = edges;
+            int start = nodeTile[n];
+            for (byte d = 0; d < Direction.COUNT; d++) {
+                if ((exits[start] & (1 << d)) == 0) continue;
+                int tile = map.neighbor(start % width, start / width, d, false);
+                byte heading = d;
+                int steps = 1;
+                while (nodeOf[tile] < 0 && steps <= tiles) {
+                    heading = onlyExit(exits[tile], heading);
+                    if (heading == Direction.NONE) break;
+                    tile = map.neighbor(tile % width, tile / width, heading, false);
+                    steps++;
+                }
+                if (nodeOf[tile] < 0) continue; // a loop with no junction on it
+                to[edges] = nodeOf[tile];
+                length[edges] = steps;
+                edges++;
+            }
+        }
+        firstEdge[nodes] = edges;
+        edgeTo = Arrays.copyOf(to, edges);
+        edgeLength = Arrays.copyOf(length, edges);
+
+        best = new int[nodes];
+        stamp = new int[nodes];
+    }
+
+    /** Bitmask of legal moves from (x, y) (bit d for Direction d), 0 for walls, gates or off the map. */
+    int exits(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return 0;
+        return exits[y * width + x];
+    }
+
+    /**
+     * Moves open to something arriving at (x, y) heading in direction dir, i.e. the exits other
+     * than straight back. More than one bit means there is a decision to make.
+     */
+    int choices(int x, int y, byte dir) {
+        int mask = exits(x, y);
+        return dir >= 0 ? mask & ~(1 << Direction.OPPOSITE[dir]) : mask;
+    }
+
+    int nodeCount() {
+        return nodeTile.length;
+    }
+
+    int edgeCount() {
+        return edgeTo.length;
+    }
+
+    /** Node id of the junction or dead end at (x, y), or -1 if the tile isn't one. */
+    int nodeAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return -1;
+        return nodeOf[y * width + x];
+    }
+
+    int nodeTile(int node) {
+        return nodeTile[node];
+    }
+
+    /** Walking distance between two nodes (Dijkstra over the corridors), or -1 if unreachable. */
+    int distance(int from, int to) {
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        int gen = generation;
+        int size = 0;
+        best[from] = 0;
+        stamp[from] = gen;
+        size = push(size, 0, from);
+        while (size > 0) {
+            long top = heap[0];
+            size = pop(size);
+            int node = (int) top, d = (int) (top >>> 32);
+            if (d > best[node]) continue;
+            if (node == to) return d;
+            for (int e = firstEdge[node]; e < firstEdge[node + 1]; e++) {
+                int next = edgeTo[e], nd = d + edgeLength[e];
+                if (stamp[next] == gen && best[next] <= nd) continue;
+                stamp[next] = gen;
+                best[next] = nd;
+                size = push(size, nd, next);
+            }
+        }
+        return -1;
+    }
+
+    // The single exit of a corridor tile other than going back, or NONE if there isn't exactly one
+    private static byte onlyExit(int mask, byte heading) {
+        int options = mask & ~(1 << Direction.OPPOSITE[heading]);
+        if (Integer.bitCount(options) != 1) return Direction.NONE;
+        return (byte) Integer.numberOfTrailingZeros(options);
+    }
+
+    // Binary min-heap of (distance << 32 | node)
+    private int push(int size, int dist, int node) {
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        long key = ((long) dist << 32) | node;
+        int i = size++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heap[p] <= key) break;
+            heap[i] = heap[p];
+            i = p;
+        }
+        heap[i] = key;
+        return size;
+    }
+
+    private int pop(int size) {
+        long last = heap[--size];
+        int i = 0, half = size >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < size && heap[c + 1] < heap[c]) c++;
+            if (last <= heap[c]) break;
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = last;
+        return size;
+    }
+}
@@ -0,0 +1,149 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Software renderer for large windows and big mazes. The frame is composed at {@link #UNIT}
+ * pixels per tile in an int array, copied into a PixelBuffer and drawn with a single
+ * nearest-neighbour scaled drawImage, so its cost follows the size of the maze and not the size
+ * of the canvas. Maze and collectibles live in a base image that is patched only where the
+ * TileMap reports changes; each frame starts from a copy of it and blits the sprites on top.
+ * Sprites come from a {@link SpriteAtlas} at UNIT size; pixels less than half opaque are skipped,
+ * the rest are written opaque.
+ */
+final class LowResRenderer {
+    static final int UNIT = 8;
+    private static final int BACKGROUND = 0xFF000033;
+    private static final int WALL = 0xFF0000FF;
+    private static final int GATE = 0xFFFFC0CB;
+    private static final int DOT = 0xFFFFB8AE;
+    private static final int PELLET = 0xFFFFFFFF;
+    private static final int FRUIT = 0xFFFFA500; // fallbacks when a sprite is missing
+    private static final int KEY = 0xFFFFFF00;
+
+    private final SpriteAtlas sprites = SpriteAtlas.get(UNIT);
+    private final double scale; // framebuffer pixels per canvas pixel
+    private final IntConsumer patch = this::drawTile;
+
+    private TileMap baseFor;
+    private int baseVersion = -1;
+    private int width, height;
+    private int[] base, frame;
+    private IntBuffer buffer;
+    private PixelBuffer<IntBuffer> pixels;
+    private WritableImage image;
+
+    /** @param tileSize canvas pixels per tile */
+    LowResRenderer(int tileSize) {
+        scale = (double) UNIT / tileSize;
+    }
+
+    /** Starts a frame showing the map as it is now. */
+    void begin(TileMap map) {
+        boolean rebuild = map != baseFor || map.structureVersion() != baseVersion;
+        if (rebuild) {
+            baseFor = map;
+            baseVersion = map.structureVersion();
+            allocate(map.width * UNIT, map.height * UNIT);
+        }
+        if (!map.drainChanged(patch) || rebuild) {
+            for (int i = 0; i < map.width * map.height; i++) drawTile(i);
+        }
+        System.arraycopy(base, 0, frame, 0, base.length);
+    }
+
+    /** Blits a sprite over the tile whose top-left corner is at canvas position (x, y); false if it's missing. */
+    boolean sprite(int slot, double x, double y) {
+        if (!sprites.has(slot)) return false;
+        int[] src = sprites.argb;
+        int sx = sprites.originX(slot), sy = sprites.originY(slot);
+        int fx = (int) Math.round(x * scale), fy = (int) Math.round(y * scale);
+        for (int row = 0; row < UNIT; row++) {
+            int py = fy + row;
+            if (py < 0 || py >= height) continue;
+            int from = (sy + row) * sprites.stride + sx;
+            for (int col = 0; col < UNIT; col++) {
+                int px = fx + col;
+                if (px < 0 || px >= width) continue;
+                int c = src[from + col];
+                if (c >>> 24 >= 0x80) frame[py * width + px] = c | 0xFF000000;
+            }
+        }
+        return true;
+    }
+
+    /** Fills the tile-sized square at canvas position (x, y), inset by a pixel; for fallback shapes. */
+    void block(int argb, double x, double y) {
+        int fx = (int) Math.round(x * scale), fy = (int) Math.round(y * scale);
+        fill(frame, argb, fx + 1, fy + 1, UNIT - 2, UNIT - 2);
+    }
+
+    /** Copies the frame into the image and draws it over the whole canvas with one scaled blit. */
+    void present(GraphicsContext gc, double canvasWidth, double canvasHeight) {
+        buffer.clear();
+        buffer.put(frame);
+        pixels.updateBuffer(b -> null);
+        gc.setImageSmoothing(false);
+        gc.drawImage(image, 0, 0, canvasWidth, canvasHeight);
+        gc.setImageSmoothing(true);
+    }
+
+    private void allocate(int w, int h) {
+        if (w == width && h == height) return;
+        width = w;
+        height = h;
+        base = new int[w * h];
+        frame = new int[w * h];
+        buffer = ByteBuffer.allocateDirect(w * h * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        pixels = new PixelBuffer<>(w, h, buffer, PixelFormat.getIntArgbPreInstance());
+        image = new WritableImage(pixels);
+    }
+
+    // Repaints one tile of the base image
+    private void drawTile(int index) {
+        int x = (index % baseFor.width) * UNIT, y = (index / baseFor.width) * UNIT;
+        int tile = baseFor.get(index);
+        fill(base, BACKGROUND, x, y, UNIT, UNIT);
+        if (tile == TileMap.WALL) {
+            fill(base, WALL, x + 1, y + 1, UNIT - 2, UNIT - 2);
+        } else if (tile == TileMap.GATE) {
+            fill(base, GATE, x, y + UNIT / 2, UNIT, 1);
+        } else if (tile == TileMap.DOT) {
+            fill(base, DOT, x + UNIT / 2 - 1, y + UNIT / 2 - 1, 2, 2);
+        } else if (tile == TileMap.PELLET) {
+            fill(base, PELLET, x + UNIT / 4, y + UNIT / 4, UNIT / 2, UNIT / 2);
+        } else if (tile >= 9 && tile <= TileMap.KEY) {
+            int slot = tile == TileMap.KEY ? SpriteAtlas.KEY : SpriteAtlas.fruit(tile - 9);
+            if (sprites.has(slot)) blitBase(slot, x, y);
+            else fill(base, tile == TileMap.KEY ? KEY : FRUIT, x + 1, y + 1, UNIT - 2, UNIT - 2);
+        }
+    }
+
+    private void blitBase(int slot, int x, int y) {
+        int sx = sprites.originX(slot), sy = sprites.originY(slot);
+        for (int row = 0; row < UNIT; row++) {
+            int from = (sy + row) * sprites.stride + sx;
+            for (int col = 0; col < UNIT; col++) {
+                int c = sprites.argb[from + col];
+                if (c >>> 24 >= 0x80) base[(y + row) * width + x + col] = c | 0xFF000000;
+            }
+        }
+    }
+
+    private void fill(int[] target, int argb, int x, int y, int w, int h) {
+        int x0 = Math.max(x, 0), x1 = Math.min(x + w, width);
+        if (x0 >= x1) return;
+        for (int row = Math.max(y, 0); row < Math.min(y + h, height); row++) {
+            Arrays.fill(target, row * width + x0, row * width + x1, argb);
+        }
+    }
+}
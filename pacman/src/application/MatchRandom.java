@@ -0,0 +1,64 @@
+package application;
+
+import java.util.SplittableRandom;
+
+/**
+ * Seeded per-match random generator (SplitMix64, the algorithm behind SplittableRandom).
+ * Every random decision in the simulation draws from the world's instance, so two worlds
+ * with the same seed and the same inputs play out identically. Unlike SplittableRandom
+ * the whole state is one long, which can be read back and restored for snapshots.
+ */
+final class MatchRandom {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    MatchRandom(long seed) {
+        this.state = seed;
+    }
+
+    /** A fresh seed for a new match. */
+    static long newSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    long getState() {
+        return state;
+    }
+
+    void setState(long state) {
+        this.state = state;
+    }
+
+    long nextLong() {
+        long salt = state;
+        state += GOLDEN_GAMMA;
+        return mix(salt, 0);
+    }
+
+    /** Uniform double in [0, 1), a drop-in for Math.random(). */
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /** Uniform int in [0, bound). */
+    int nextInt(int bound) {
+        return (int) (nextDouble() * bound);
+    }
+
+    /**
+     * Stateless draw: the index-th value derived from a salt taken from a MatchRandom. Lets code
+     * running on several threads draw deterministically without sharing the generator.
+     */
+    static long mix(long salt, long index) {
+        long z = salt + (index + 1) * GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Maps random bits (e.g. from {@link #mix}) to a uniform int in [0, bound). */
+    static int nextInt(long bits, int bound) {
+        return (int) (((bits >>> 11) * 0x1.0p-53) * bound);
+    }
+}
@@ -0,0 +1,63 @@
+package application;
+
+/**
+ * Seeded random mazes for benchmarks and stress tests, much larger than the built-in maps.
+ * Carves a perfect maze with an iterative depth-first search over the odd cells, then knocks
+ * out a share of the remaining walls so there are loops and several routes between most tiles,
+ * like a Pac-Man maze. The border stays solid; corridors are filled with dots.
+ */
+final class MazeGenerator {
+
+    private MazeGenerator() {}
+
+    /**
+     * @param width  map width in tiles (made odd if even, so the border is wall)
+     * @param height map height in tiles (likewise)
+     * @param loops  fraction of inner walls between two corridors to remove, 0 for a perfect maze
+     */
+    static TileMap generate(int width, int height, double loops, long seed) {
+        int w = width | 1, h = height | 1;
+        MatchRandom random = new MatchRandom(seed);
+        TileMap map = new TileMap(w, h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                map.set(x, y, TileMap.WALL);
+            }
+        }
+
+        // Depth-first carve over cells at odd coordinates; stack holds tile ids
+        int[] stack = new int[(w / 2) * (h / 2) + 1];
+        int top = 0;
+        stack[top++] = w + 1;
+        map.set(1, 1, TileMap.DOT);
+        byte[] order = new byte[Direction.COUNT];
+        while (top > 0) {
+            int tile = stack[top - 1];
+            int x = tile % w, y = tile / w;
+            int options = 0;
+            for (byte d = 0; d < Direction.COUNT; d++) {
+                int nx = x + 2 * Direction.DX[d], ny = y + 2 * Direction.DY[d];
+                if (nx > 0 && ny > 0 && nx < w - 1 && ny < h - 1 && map.isWall(nx, ny)) order[options++] = d;
+            }
+            if (options == 0) {
+                top--;
+                continue;
+            }
+            byte d = order[random.nextInt(options)];
+            map.set(x + Direction.DX[d], y + Direction.DY[d], TileMap.DOT);
+            map.set(x + 2 * Direction.DX[d], y + 2 * Direction.DY[d], TileMap.DOT);
+            stack[top++] = (y + 2 * Direction.DY[d]) * w + x + 2 * Direction.DX[d];
+        }
+
+        // Braid: open walls that separate two corridors in a straight line
+        for (int y = 1; y < h - 1; y++) {
+            for (int x = 1; x < w - 1; x++) {
+                if (!map.isWall(x, y) || random.nextDouble() >= loops) continue;
+                boolean horizontal = !map.isWall(x - 1, y) && !map.isWall(x + 1, y) && map.isWall(x, y - 1) && map.isWall(x, y + 1);
+                boolean vertical = !map.isWall(x, y - 1) && !map.isWall(x, y + 1) && map.isWall(x - 1, y) && map.isWall(x + 1, y);
+                if (horizontal || vertical) map.set(x, y, TileMap.DOT);
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,69 @@
+package application;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers recently drawn paths so the debug overlay doesn't search the maze every frame.
+ * Entries are keyed by start, target and gate mode, and are all dropped when the map changes:
+ * another map is loaded or a wall or gate tile is rewritten (TileMap.structureVersion).
+ *
+ * Direct-mapped: each key has one slot, and a colliding key simply replaces the old entry.
+ */
+final class PathCache {
+    private final long[] keys;
+    private final Object[] paths;
+    private final int mask;
+    private TileMap map;
+    private int version;
+
+    /** @param slots number of entries kept, rounded up to a power of two */
+    PathCache(int slots) {
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        keys = new long[size];
+        paths = new Object[size];
+        mask = size - 1;
+    }
+
+    /** Cached path, or null if it isn't known for the map as it is now. */
+    @SuppressWarnings("unchecked")
+    List<int[]> get(TileMap map, int sx, int sy, int gx, int gy, boolean allowGate) {
+        validate(map);
+        long key = key(sx, sy, gx, gy, allowGate);
+        int slot = slot(key);
+        return paths[slot] != null && keys[slot] == key ? (List<int[]>) paths[slot] : null;
+    }
+
+    void put(TileMap map, int sx, int sy, int gx, int gy, boolean allowGate, List<int[]> path) {
+        validate(map);
+        long key = key(sx, sy, gx, gy, allowGate);
+        int slot = slot(key);
+        keys[slot] = key;
+        paths[slot] = path;
+    }
+
+    void clear() {
+        Arrays.fill(paths, null);
+        map = null;
+    }
+
+    private void validate(TileMap current) {
+        if (current != map || current.structureVersion() != version) {
+            Arrays.fill(paths, null);
+            map = current;
+            version = current.structureVersion();
+        }
+    }
+
+    // Coordinates are packed as 15-bit fields (targets may lie off the map, so they are offset)
+    private static long key(int sx, int sy, int gx, int gy, boolean allowGate) {
+        return ((long) (sx & 0x7fff) << 48) | ((long) (sy & 0x7fff) << 33)
+                | ((long) ((gx + 0x4000) & 0x7fff) << 18) | ((long) ((gy + 0x4000) & 0x7fff) << 3)
+                | (allowGate ? 1 : 0);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> 40) & mask;
+    }
+}
@@ -0,0 +1,142 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Reusable A* on a TileMap (4-way, tunnels wrap like Entity.move). All scratch state lives in
+ * int arrays sized once per map size; a generation stamp marks which entries belong to the
+ * current search, so nothing is cleared or allocated between searches. Not thread-safe: keep
+ * one instance per thread.
+ */
+final class Pathfinder {
+    private int width, height;
+    private boolean wraps;      // the map has tunnels (always on the edge columns), so rows can wrap
+    private int[] gScore = new int[0];
+    private int[] parent = new int[0];
+    private int[] seen = new int[0];   // == generation: gScore/parent are valid for this search
+    private int[] closed = new int[0]; // == generation: expanded in this search
+    private int generation;
+
+    // Binary min-heap of (f << 32 | tile); stale entries are skipped when popped
+    private long[] heap = new long[0];
+    private int heapSize;
+
+    /**
+     * Finds a shortest path and writes its tile ids (y * width + x), start first, into out.
+     *
+     * @param allowGate whether jail tiles and doors can be crossed (eaten ghosts)
+     * @return the number of tiles on the path including start and goal, or 0 if there is none.
+     *         If it is larger than out.length only the first out.length tiles are written.
+     */
+    int findPath(TileMap map, int sx, int sy, int gx, int gy, boolean allowGate, int[] out) {
+        if (!map.inBounds(sx, sy) || !map.inBounds(gx, gy)) return 0;
+        if (map.isWall(gx, gy) || (!allowGate && map.isGate(gx, gy))) return 0;
+        prepare(map);
+        int gen = nextGeneration();
+        int start = sy * width + sx, goal = gy * width + gx;
+
+        heapSize = 0;
+        gScore[start] = 0;
+        parent[start] = -1;
+        seen[start] = gen;
+        push(heuristic(sx, sy, gx, gy), start);
+        while (heapSize > 0) {
+            long top = pop();
+            int tile = (int) top;
+            if (closed[tile] == gen) continue;
+            closed[tile] = gen;
+            if (tile == goal) return writePath(goal, out);
+
+            int x = tile % width, y = tile / width;
+            int g = gScore[tile] + 1;
+            for (byte d = 0; d < Direction.COUNT; d++) {
+                int nx = x + Direction.DX[d], ny = y + Direction.DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+                if (wraps && map.get(nx, ny) == TileMap.TUNNEL) {
+                    if (d == Direction.LEFT) nx = width - 1;
+                    else if (d == Direction.RIGHT) nx = 0;
+                }
+                if (map.isWall(nx, ny) || (!allowGate && map.isGate(nx, ny))) continue;
+                int n = ny * width + nx;
+                if (closed[n] == gen) continue;
+                if (seen[n] == gen && gScore[n] <= g) continue;
+                seen[n] = gen;
+                gScore[n] = g;
+                parent[n] = tile;
+                push(g + heuristic(nx, ny, gx, gy), n);
+            }
+        }
+        return 0;
+    }
+
+    // Walks the parents back from the goal, writing each tile at its index on the path
+    private int writePath(int goal, int[] out) {
+        int length = gScore[goal] + 1;
+        for (int t = goal, i = length - 1; t >= 0; t = parent[t], i--) {
+            if (i < out.length) out[i] = t;
+        }
+        return length;
+    }
+
+    // Manhattan distance; with tunnels a row can also be crossed the other way round
+    private int heuristic(int x, int y, int gx, int gy) {
+        int dx = Math.abs(x - gx);
+        if (wraps) dx = Math.min(dx, width - 1 - dx);
+        return dx + Math.abs(y - gy);
+    }
+
+    private void prepare(TileMap map) {
+        if (map.width != width || map.height != height) {
+            width = map.width;
+            height = map.height;
+            int tiles = width * height;
+            gScore = new int[tiles];
+            parent = new int[tiles];
+            seen = new int[tiles];
+            closed = new int[tiles];
+            heap = new long[4 * tiles + 1]; // at most one push per edge relaxation
+            generation = 0;
+        }
+        wraps = false;
+        for (int y = 0; y < height && !wraps; y++) {
+            wraps = map.get(0, y) == TileMap.TUNNEL || map.get(width - 1, y) == TileMap.TUNNEL;
+        }
+    }
+
+    private int nextGeneration() {
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        return generation;
+    }
+
+    private void push(int f, int tile) {
+        long key = ((long) f << 32) | tile;
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heap[p] <= key) break;
+            heap[i] = heap[p];
+            i = p;
+        }
+        heap[i] = key;
+    }
+
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < heapSize && heap[c + 1] < heap[c]) c++;
+            if (last <= heap[c]) break;
+            heap[i] = heap[c];
+            i = c;
+        }
+        heap[i] = last;
+        return top;
+    }
+}
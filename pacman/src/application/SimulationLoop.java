@@ -0,0 +1,166 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a GameWorld at a fixed 60 ticks/second on a thread of its own, so GC pauses and layout on
+ * the FX thread no longer delay the game. After every tick the world is snapshotted into a
+ * lock-free triple buffer; the FX thread picks up the newest frame with {@link #poll} and renders
+ * from a copy of its own. Inputs travel the other way through a single-producer, single-consumer
+ * ring ({@link #sendInput}).
+ *
+ * While active, the world belongs to this thread. A tick that reports events (caught, all
+ * collected, all down) halts the loop until the FX thread has taken them with {@link #takeEvents}
+ * and called {@link #resume}, so the world can be read safely while they are handled.
+ * {@link #setActive} with false waits for a tick in progress before returning.
+ */
+final class SimulationLoop {
+    private static final long TICK_NS = 1_000_000_000L / 60;
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    private static final int FRESH = 4; // triple buffer state: middle slot index | FRESH
+
+    private final GameWorld world;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean active;
+    private volatile boolean inTick;
+    private volatile boolean halted;
+    private final AtomicInteger events = new AtomicInteger();
+
+    // Triple buffer: the simulation writes slots[back], the reader owns slots[front], and the third
+    // slot changes hands through state. Each frame is the publish time followed by a world snapshot.
+    private final ByteBuffer[] slots = new ByteBuffer[3];
+    private final AtomicInteger state = new AtomicInteger(2);
+    private int back = 0;   // simulation thread only
+    private int front = 1;  // reader only
+
+    // Input ring: FX thread writes at tail, simulation reads at head; (player << 8) | (dir & 0xFF)
+    private final int[] inputs = new int[64];
+    private final AtomicInteger inputHead = new AtomicInteger();
+    private final AtomicInteger inputTail = new AtomicInteger();
+    private byte input1 = Direction.NONE, input2 = Direction.NONE;
+
+    // Ticks run and ticks dropped because the thread fell too far behind
+    volatile long ticks, dropped;
+
+    SimulationLoop(GameWorld world) {
+        this.world = world;
+        for (int i = 0; i < slots.length; i++) slots[i] = ByteBuffer.allocate(8 + world.snapshotSize());
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts or stops ticking. Stopping waits for a tick in progress, after which the caller may
+     * use the world directly until it starts the loop again.
+     */
+    void setActive(boolean on) {
+        if (on == active) return;
+        if (on) {
+            halted = false; // events from before the loop stopped have been taken by now
+            active = true;
+            LockSupport.unpark(thread);
+            return;
+        }
+        active = false;
+        while (inTick) Thread.onSpinWait();
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    /** Queues a direction for player 1 (0) or player 2 (1); FX thread only. False if the ring is full. */
+    boolean sendInput(int player, byte dir) {
+        int tail = inputTail.get();
+        if (tail - inputHead.get() == inputs.length) return false;
+        inputs[tail & (inputs.length - 1)] = player << 8 | (dir & 0xFF);
+        inputTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /** Events of the ticks since the last call (GameWorld.EVENT_*); the loop stays halted until {@link #resume}. */
+    int takeEvents() {
+        return events.getAndSet(0);
+    }
+
+    /** Continues after events have been handled. */
+    void resume() {
+        halted = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Restores the newest published frame into view if there is one the reader hasn't seen; returns
+     * its publish time (System.nanoTime), or -1 if there was nothing new.
+     */
+    long poll(GameWorld view) {
+        if ((state.get() & FRESH) == 0) return -1;
+        front = state.getAndSet(front) & 3;
+        ByteBuffer frame = slots[front];
+        frame.flip();
+        long published = frame.getLong();
+        view.restoreFrom(frame);
+        return published;
+    }
+
+    void shutdown() {
+        running = false;
+        active = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running) {
+            if (!active || halted) {
+                LockSupport.parkNanos(this, TICK_NS);
+                // Keep the cadence across short halts, don't make up for long ones
+                long now = System.nanoTime();
+                if (now - next > TICK_NS) next = now;
+                continue;
+            }
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(this, next - now);
+                continue;
+            }
+            inTick = true;
+            if (active) tick();
+            inTick = false;
+            next += TICK_NS;
+            if (now - next > MAX_CATCH_UP_TICKS * TICK_NS) {
+                // Still behind after the catch-up limit: drop the backlog
+                dropped += (now - next) / TICK_NS;
+                next = now;
+            }
+        }
+    }
+
+    private void tick() {
+        for (int head = inputHead.get(); head != inputTail.get(); head++) {
+            int in = inputs[head & (inputs.length - 1)];
+            if (in >>> 8 == 0) input1 = (byte) in;
+            else input2 = (byte) in;
+            inputHead.lazySet(head + 1);
+        }
+        int e = world.step(input1, input2);
+        ticks++;
+
+        int size = 8 + world.snapshotSize();
+        if (slots[back].capacity() < size) slots[back] = ByteBuffer.allocate(size);
+        ByteBuffer frame = slots[back];
+        frame.clear();
+        frame.putLong(System.nanoTime());
+        world.snapshotInto(frame);
+        back = state.getAndSet(back | FRESH) & 3;
+
+        if (e != 0) {
+            halted = true;
+            events.getAndAccumulate(e, (a, b) -> a | b);
+        }
+    }
+}
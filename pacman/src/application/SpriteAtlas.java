@@ -0,0 +1,184 @@
+package application;
+
+import java.nio.file.Paths;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Every game sprite in one texture, decoded once per process and scaled to the size it is drawn
+ * at, so drawing is a 1:1 copy of a sub-rectangle. Player sprites are stored pre-rotated for each
+ * heading, so they need no transform either. Sprites are addressed by slot: see
+ * {@link #player}, {@link #ghost}, {@link #afraid}, {@link #hurt}, {@link #fruit} and {@link #KEY}.
+ * A sprite whose file is missing or unreadable is left out; {@link #draw} then returns false and
+ * the caller draws its fallback shape. The texture's pixels are also kept in {@link #argb} for
+ * software blits.
+ */
+final class SpriteAtlas {
+    // Slot layout
+    private static final int PLAYER = 0;   // 2 players x (normal, invulnerable) x (open, half, closed) x 4 headings
+    private static final int GHOST = 48;   // 4 personalities x 8 frames, in file order
+    private static final int AFRAID = 80;
+    private static final int HURT = 82;
+    private static final int FRUIT = 84;   // apple, bell, cherries, galaxian, melon, orange, strawberry
+    static final int KEY = 91;
+    private static final int COUNT = 92;
+    private static final int COLUMNS = 8;
+    // First ghost frame per Direction (UP, DOWN, LEFT, RIGHT); file frame pairs are right, left, up, down
+    private static final int[] GHOST_FRAME_START = {4, 6, 2, 0};
+    private static final String[] GHOST_DIRS = {"red", "pink", "blue", "orange"}; // GhostStore personality order
+    private static final String[] FRUITS = {"apple", "bell", "cherries", "galaxian", "melon", "orange", "strawberry"};
+    private static final String[] PLAYER_FRAMES = {"open", "half-open", "closed"};
+
+    private static final java.util.Map<Integer, SpriteAtlas> shared = new java.util.HashMap<>();
+
+    /** The process-wide atlas for sprites of the given size, loaded on first use. */
+    static synchronized SpriteAtlas get(int size) {
+        SpriteAtlas atlas = shared.get(size);
+        if (atlas == null) {
+            atlas = new SpriteAtlas(size);
+            shared.put(size, atlas);
+        }
+        return atlas;
+    }
+
+    final int size;
+    final WritableImage texture;
+    final int[] argb;   // texture pixels, non-premultiplied, row-major
+    final int stride;   // texture width
+    private final boolean[] present = new boolean[COUNT];
+    final long loadNanos; // decoding and scaling every sprite, for the F4 stats overlay
+    int loaded;           // sprites found
+    private final int[] pixels, turned; // load scratch
+
+    private SpriteAtlas(int size) {
+        long start = System.nanoTime();
+        this.size = size;
+        int cell = size + 2; // a pixel of padding so smoothing never picks up a neighbour
+        stride = COLUMNS * cell;
+        texture = new WritableImage(stride, (COUNT + COLUMNS - 1) / COLUMNS * cell);
+        argb = new int[stride * (int) texture.getHeight()];
+        pixels = new int[size * size];
+        turned = new int[size * size];
+        for (int p = 0; p < 2; p++) {
+            String dir = p == 0 ? "pacman" : "pacwoman";
+            for (int f = 0; f < 3; f++) {
+                loadRotated(p, false, f, dir + "/" + PLAYER_FRAMES[f] + ".png");
+                loadRotated(p, true, f, dir + "/" + PLAYER_FRAMES[f] + "-invulnerable.png");
+            }
+        }
+        for (int k = 0; k < GHOST_DIRS.length; k++) {
+            for (int f = 0; f < 8; f++) load(GHOST + k * 8 + f, "ghosts/" + GHOST_DIRS[k] + "/" + (f + 1) + ".png");
+        }
+        for (int f = 0; f < 2; f++) {
+            load(afraid(f), "ghosts/afraid/" + (f + 1) + ".png");
+            load(hurt(f), "ghosts/hurt/" + (f + 1) + ".png");
+        }
+        for (int i = 0; i < FRUITS.length; i++) load(fruit(i), "bonus/" + FRUITS[i] + ".png");
+        load(KEY, "bonus/key.png");
+        loadNanos = System.nanoTime() - start;
+    }
+
+    /** Player sprite: player 0 or 1, frame 0 open, 1 half open, 2 closed, facing dir (NONE faces right). */
+    static int player(int player, boolean invulnerable, int frame, byte dir) {
+        return PLAYER + ((player * 2 + (invulnerable ? 1 : 0)) * 3 + frame) * Direction.COUNT
+                + (dir >= 0 ? dir : Direction.RIGHT);
+    }
+
+    /** Ghost sprite by GhostStore personality, heading (NONE faces right) and animation frame 0 or 1. */
+    static int ghost(int personality, byte dir, int frame) {
+        return GHOST + personality * 8 + (dir >= 0 ? GHOST_FRAME_START[dir] : 0) + frame;
+    }
+
+    static int afraid(int frame) {
+        return AFRAID + frame;
+    }
+
+    static int hurt(int frame) {
+        return HURT + frame;
+    }
+
+    /** Bonus fruit by index (tile value - 9). */
+    static int fruit(int index) {
+        return FRUIT + index;
+    }
+
+    boolean has(int slot) {
+        return present[slot];
+    }
+
+    /** Draws a sprite at (x, y), unscaled; false if the sprite isn't available. */
+    boolean draw(GraphicsContext gc, int slot, double x, double y) {
+        if (!present[slot]) return false;
+        gc.drawImage(texture, originX(slot), originY(slot), size, size, x, y, size, size);
+        return true;
+    }
+
+    /** Sub-rectangle of a sprite in {@link #texture}, e.g. for an ImageView viewport. */
+    Rectangle2D viewport(int slot) {
+        return new Rectangle2D(originX(slot), originY(slot), size, size);
+    }
+
+    /** Top-left corner of a sprite in the texture and in {@link #argb}. */
+    int originX(int slot) {
+        return slot % COLUMNS * (size + 2) + 1;
+    }
+
+    int originY(int slot) {
+        return slot / COLUMNS * (size + 2) + 1;
+    }
+
+    private void load(int slot, String file) {
+        if (read(file)) put(slot, pixels);
+    }
+
+    // A player sprite (drawn facing right) turned to each heading by its Direction.ANGLE
+    private void loadRotated(int player, boolean invulnerable, int frame, String file) {
+        if (!read(file)) return;
+        for (byte d = 0; d < Direction.COUNT; d++) {
+            int quarter = ((int) Direction.ANGLE[d] / 90 + 4) % 4; // clockwise quarter turns
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int sx, sy;
+                    switch (quarter) {
+                        case 1: sx = y; sy = size - 1 - x; break;
+                        case 2: sx = size - 1 - x; sy = size - 1 - y; break;
+                        case 3: sx = size - 1 - y; sy = x; break;
+                        default: sx = x; sy = y;
+                    }
+                    turned[y * size + x] = pixels[sy * size + sx];
+                }
+            }
+            put(player(player, invulnerable, frame, d), turned);
+        }
+    }
+
+    // Decodes a sprite file at the atlas size into pixels; false if it can't be read
+    private boolean read(String file) {
+        try {
+            Image image = new Image(Paths.get("src/ressource/" + file).toUri().toString(), size, size, false, true);
+            PixelReader reader = image.getPixelReader();
+            if (image.isError() || reader == null) {
+                System.err.println("Failed to load sprite " + file);
+                return false;
+            }
+            reader.getPixels(0, 0, size, size, PixelFormat.getIntArgbInstance(), pixels, 0, size);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Failed to load sprite " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void put(int slot, int[] sprite) {
+        int x = originX(slot), y = originY(slot);
+        texture.getPixelWriter().setPixels(x, y, size, size, PixelFormat.getIntArgbInstance(), sprite, 0, size);
+        for (int row = 0; row < size; row++) System.arraycopy(sprite, row * size, argb, (y + row) * stride + x, size);
+        present[slot] = true;
+        loaded++;
+    }
+}
@@ -0,0 +1,260 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Flat tile map: one byte per tile in row-major order, plus bitboard layers for walls, gates,
+ * dots and power pellets (one bit per tile, {@code (width + 63) / 64} longs per row, so a
+ * 28-wide maze is one long per row). Copies are plain array copies, remaining dots are a popcount,
+ * and the byte array can be written to a buffer as-is.
+ *
+ * All writes go through {@link #set} so the layers (and an attached CollectibleIndex) stay in sync,
+ * and every written tile is remembered until the renderer collects it with {@link #drainChanged}.
+ */
+final class TileMap {
+    static final int EMPTY = 0;
+    static final int WALL = 1;
+    static final int DOT = 2;
+    static final int PELLET = 3;
+    static final int JAIL = 4;   // jail floor, ghosts only
+    static final int GATE = 5;   // jail door, ghosts only
+    static final int TUNNEL = 7; // wraps to the other side of the row
+    static final int KEY = 16;   // fruits are 9-15
+
+    final int width;
+    final int height;
+    private final int wordsPerRow;
+    private final byte[] tiles;
+    private final long[] walls;
+    private final long[] gates;   // tiles 4 and 5
+    private final long[] dots;
+    private final long[] pellets;
+    private final long[] changed;  // tiles set since the last drainChanged
+    private boolean allChanged = true; // the whole map was replaced
+    // Bumped whenever a wall or gate tile changes, so cached path data can be invalidated
+    private int structureVersion;
+    private CollectibleIndex collectibles;
+
+    TileMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.tiles = new byte[width * height];
+        this.walls = new long[wordsPerRow * height];
+        this.gates = new long[wordsPerRow * height];
+        this.dots = new long[wordsPerRow * height];
+        this.pellets = new long[wordsPerRow * height];
+        this.changed = new long[wordsPerRow * height];
+    }
+
+    /** Builds a map from rows of tile values, as the maps are written in source. */
+    static TileMap of(int[][] rows) {
+        TileMap map = new TileMap(rows[0].length, rows.length);
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length; x++) {
+                map.set(x, y, rows[y][x]);
+            }
+        }
+        map.structureVersion = 0;
+        return map;
+    }
+
+    TileMap copy() {
+        TileMap copy = new TileMap(width, height);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /** Overwrites this map with the tiles of a map of the same size (the attached index is not updated). */
+    void copyFrom(TileMap other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Map size mismatch");
+        }
+        // A new version only if the structure differs, and never one this map has used before
+        if (!Arrays.equals(walls, other.walls) || !Arrays.equals(gates, other.gates)) {
+            structureVersion++;
+        }
+        System.arraycopy(other.tiles, 0, tiles, 0, tiles.length);
+        System.arraycopy(other.walls, 0, walls, 0, walls.length);
+        System.arraycopy(other.gates, 0, gates, 0, gates.length);
+        System.arraycopy(other.dots, 0, dots, 0, dots.length);
+        System.arraycopy(other.pellets, 0, pellets, 0, pellets.length);
+        allChanged = true;
+    }
+
+    /** Keeps the given index in sync with every subsequent write; pass null to detach. */
+    void setCollectibleIndex(CollectibleIndex index) {
+        this.collectibles = index;
+    }
+
+    boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /** Tile value at (x, y); the position must be in bounds. */
+    int get(int x, int y) {
+        return tiles[y * width + x];
+    }
+
+    int get(int index) {
+        return tiles[index];
+    }
+
+    int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Tile index reached by one step from (x, y) in direction d, following Entity.move: stepping
+     * onto a tunnel tile wraps to the other side of the row. -1 if the step leaves the map, hits a
+     * wall, or hits a gate while gates are closed.
+     */
+    int neighbor(int x, int y, byte d, boolean gatesOpen) {
+        int nx = x + Direction.DX[d], ny = y + Direction.DY[d];
+        if (!inBounds(nx, ny)) return -1;
+        if (get(nx, ny) == TUNNEL) {
+            if (d == Direction.LEFT) nx = width - 1;
+            else if (d == Direction.RIGHT) nx = 0;
+        }
+        if (isWall(nx, ny) || (!gatesOpen && isGate(nx, ny))) return -1;
+        return ny * width + nx;
+    }
+
+    boolean isWall(int x, int y) {
+        return bit(walls, x, y);
+    }
+
+    /** Jail floor or jail door: walkable for ghosts only. */
+    boolean isGate(int x, int y) {
+        return bit(gates, x, y);
+    }
+
+    boolean hasDot(int x, int y) {
+        return bit(dots, x, y);
+    }
+
+    void set(int x, int y, int val) {
+        int i = y * width + x;
+        int old = tiles[i];
+        if (old == val) return;
+        tiles[i] = (byte) val;
+        int word = y * wordsPerRow + (x >>> 6);
+        long mask = 1L << (x & 63);
+        update(walls, word, mask, val == WALL);
+        update(gates, word, mask, val == JAIL || val == GATE);
+        update(dots, word, mask, val == DOT);
+        update(pellets, word, mask, val == PELLET);
+        changed[word] |= mask;
+        if (old == WALL || val == WALL || old == JAIL || val == JAIL || old == GATE || val == GATE) {
+            structureVersion++;
+        }
+        if (collectibles != null) {
+            collectibles.onTileChanged(y, x, old, val);
+        }
+    }
+
+    int dotCount() {
+        return popcount(dots);
+    }
+
+    /**
+     * Tile index (y * width + x) of the k-th remaining dot in row-major order, or -1 if there are
+     * not that many. Depends only on the map contents, never on the order dots were eaten.
+     */
+    int nthDot(int k) {
+        for (int i = 0; i < dots.length; i++) {
+            long w = dots[i];
+            int n = Long.bitCount(w);
+            if (k >= n) {
+                k -= n;
+                continue;
+            }
+            for (; k > 0; k--) w &= w - 1; // drop the lowest k set bits
+            int y = i / wordsPerRow;
+            int x = (i % wordsPerRow) * 64 + Long.numberOfTrailingZeros(w);
+            return y * width + x;
+        }
+        return -1;
+    }
+
+    int pelletCount() {
+        return popcount(pellets);
+    }
+
+    /**
+     * Hands the index of every tile set since the previous call to the visitor and forgets them.
+     * Returns false, visiting nothing, if the whole map was replaced in between (copyFrom); the
+     * caller should then treat every tile as changed.
+     */
+    boolean drainChanged(java.util.function.IntConsumer visitor) {
+        if (allChanged) {
+            allChanged = false;
+            Arrays.fill(changed, 0);
+            return false;
+        }
+        for (int i = 0; i < changed.length; i++) {
+            long w = changed[i];
+            if (w == 0) continue;
+            changed[i] = 0;
+            int row = (i / wordsPerRow) * width + (i % wordsPerRow) * 64;
+            for (; w != 0; w &= w - 1) visitor.accept(row + Long.numberOfTrailingZeros(w));
+        }
+        return true;
+    }
+
+    int structureVersion() {
+        return structureVersion;
+    }
+
+    /** Number of bytes written by {@link #writeTo}. */
+    int serializedSize() {
+        return 8 + tiles.length;
+    }
+
+    /** Writes width, height and the raw tile bytes. */
+    void writeTo(ByteBuffer buf) {
+        buf.putInt(width).putInt(height).put(tiles);
+    }
+
+    /** Reads tiles written by {@link #writeTo} into this map, which must have the same size. */
+    void readFrom(ByteBuffer buf) {
+        int w = buf.getInt(), h = buf.getInt();
+        if (w != width || h != height) {
+            throw new IllegalArgumentException("Map size mismatch: " + w + "x" + h);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(x, y, buf.get());
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TileMap)) return false;
+        TileMap other = (TileMap) o;
+        return width == other.width && height == other.height && Arrays.equals(tiles, other.tiles);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(tiles);
+    }
+
+    private boolean bit(long[] layer, int x, int y) {
+        return (layer[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    private static void update(long[] layer, int word, long mask, boolean on) {
+        if (on) layer[word] |= mask;
+        else layer[word] &= ~mask;
+    }
+
+    private static int popcount(long[] layer) {
+        int n = 0;
+        for (long w : layer) n += Long.bitCount(w);
+        return n;
+    }
+}